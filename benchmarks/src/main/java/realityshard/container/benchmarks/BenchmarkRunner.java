@@ -0,0 +1,35 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks with the GC profiler, so the allocation rate
+ * (gc.alloc.rate.norm = bytes per operation) is reported along with the timings.
+ * 
+ * Takes the usual JMH command line options, e.g. a regex to select
+ * some of the benchmarks.
+ * 
+ * @author _rusty
+ */
+public final class BenchmarkRunner
+{
+    
+    public static void main(String[] args) throws Exception
+    {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        
+        new Runner(options).run();
+    }
+}
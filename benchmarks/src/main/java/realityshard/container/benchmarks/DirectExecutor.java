@@ -0,0 +1,27 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.benchmarks;
+
+import java.util.concurrent.Executor;
+
+
+/**
+ * Runs the tasks on the calling thread, so we measure the dispatching
+ * itself and not the thread hand-off of some pool.
+ * 
+ * @author _rusty
+ */
+final class DirectExecutor implements Executor
+{
+    
+    static final DirectExecutor INSTANCE = new DirectExecutor();
+    
+    
+    @Override
+    public void execute(Runnable command)
+    {
+        command.run();
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.util.ReferenceCountUtil;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
+import realityshard.container.gameapp.GameAppContext;
+import realityshard.container.network.GameAppContextKey;
+import realityshard.container.network.Message;
+import realityshard.container.network.MessageDemuxDecoder;
+import realityshard.container.network.RC4Codec;
+
+
+/**
+ * The whole inbound path of a message: RC4 decoding, decoding the (pooled)
+ * message, demultiplexing it to the context of the channel, and calling
+ * the handler of the game app.
+ * 
+ * @author _rusty
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark
+{
+    
+    public static class PingMessage extends Message
+    {
+        public int Sequence;
+        
+        @Override
+        protected void reset()
+        {
+            Sequence = 0;
+        }
+    }
+    
+    // Decodes the (decrypted) payload to a pooled message
+    public static class PingDecoder extends MessageToMessageDecoder<ByteBuf>
+    {
+        private final Message.Pool<PingMessage> pool = new Message.Pool<PingMessage>()
+        {
+            @Override
+            protected PingMessage newMessage()
+            {
+                return new PingMessage();
+            }
+        };
+        
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception
+        {
+            PingMessage ping = pool.acquire(ctx.channel());
+            ping.Sequence = msg.readInt();
+            msg.skipBytes(msg.readableBytes());
+            
+            out.add(ping);
+        }
+    }
+    
+    public static class Listener
+    {
+        public long Received;
+        
+        @Event.Handler
+        public void onPing(PingMessage message)
+        {
+            Received += message.Sequence;
+        }
+    }
+    
+    
+    @Param({"PER_HANDLER", "PER_EVENT"})
+    public EventAggregator.DispatchMode dispatchMode;
+    
+    @Param({"64", "1024"})
+    public int payloadSize;
+    
+    private ByteBuf payload;
+    private EmbeddedChannel channel;
+    
+    
+    @Setup
+    public void setup()
+    {
+        byte[] data = new byte[payloadSize];
+        new Random(42).nextBytes(data);
+        payload = Unpooled.wrappedBuffer(data);
+        
+        EventAggregator aggregator = new EventAggregator(DirectExecutor.INSTANCE, dispatchMode);
+        aggregator.register(new Listener());
+        
+        channel = new EmbeddedChannel(
+                new RC4Codec.Decoder(RC4CodecBenchmark.KEY), 
+                new PingDecoder(), 
+                new MessageDemuxDecoder());
+        channel.attr(GameAppContextKey.KEY).set(new GameAppContext.Default("benchmark", null, null, aggregator));
+    }
+    
+    
+    @TearDown
+    public void tearDown()
+    {
+        channel.finish();
+        payload.release();
+    }
+    
+    
+    @Benchmark
+    public Object receive()
+    {
+        channel.writeInbound(payload.duplicate().retain());
+        
+        // the demux decoder passes the message on, so it ends up here
+        Object msg = channel.readInbound();
+        ReferenceCountUtil.release(msg);
+        
+        return msg;
+    }
+}
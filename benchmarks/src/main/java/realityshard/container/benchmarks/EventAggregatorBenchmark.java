@@ -0,0 +1,102 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
+
+
+/**
+ * Throughput of the event aggregator: triggering events (with a direct executor),
+ * and registering/unregistering handler objects.
+ * 
+ * @author _rusty
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventAggregatorBenchmark
+{
+    
+    public static class PingEvent implements Event { }
+    
+    public static class SpecialPingEvent extends PingEvent { }
+    
+    public static class Listener
+    {
+        public long Received;
+        
+        @Event.Handler
+        public void onPing(PingEvent event)
+        {
+            Received++;
+        }
+    }
+    
+    
+    @Param({"1", "16"})
+    public int handlers;
+    
+    @Param({"PER_HANDLER", "PER_EVENT"})
+    public EventAggregator.DispatchMode dispatchMode;
+    
+    private EventAggregator aggregator;
+    private final PingEvent ping = new PingEvent();
+    private final SpecialPingEvent specialPing = new SpecialPingEvent();
+    
+    
+    @Setup
+    public void setup()
+    {
+        aggregator = new EventAggregator(DirectExecutor.INSTANCE, dispatchMode);
+        
+        for (int i = 0; i < handlers; i++)
+        {
+            aggregator.register(new Listener());
+        }
+    }
+    
+    
+    @Benchmark
+    public void trigger()
+    {
+        aggregator.triggerEvent(ping);
+    }
+    
+    
+    @Benchmark
+    public void triggerSubtype()
+    {
+        // resolved via the handlers of the supertype
+        aggregator.triggerEvent(specialPing);
+    }
+    
+    
+    @Benchmark
+    public Listener registerUnregister()
+    {
+        Listener listener = new Listener();
+        
+        aggregator.register(listener);
+        aggregator.unregister(listener);
+        
+        return listener;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import realityshard.container.util.Handle;
+import realityshard.container.util.HandleRegistry;
+
+
+/**
+ * Handle registration and lookup, with several threads using the
+ * same registry at once.
+ * 
+ * @author _rusty
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandleRegistryBenchmark
+{
+    
+    // Each thread walks through the known uids on its own
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        private int next;
+        
+        public int next(int size)
+        {
+            next = (next + 1) % size;
+            return next;
+        }
+    }
+    
+    
+    private static final int SIZE = 10000;
+    
+    private final HandleRegistry<Object> registry = new HandleRegistry<>();
+    private final UUID[] uids = new UUID[SIZE];
+    private final Object payload = new Object();
+    
+    
+    @Setup
+    public void setup()
+    {
+        for (int i = 0; i < SIZE; i++)
+        {
+            uids[i] = registry.register(new Object()).getUid();
+        }
+    }
+    
+    
+    @Benchmark
+    @Threads(4)
+    public Handle<Object> lookup(Cursor cursor)
+    {
+        return registry.getHandle(uids[cursor.next(SIZE)]);
+    }
+    
+    
+    @Benchmark
+    @Threads(4)
+    public Handle<Object> registerInvalidate()
+    {
+        Handle<Object> handle = registry.register(payload);
+        handle.invalidate();
+        
+        return handle;
+    }
+    
+    
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Handle<Object> mixedLookup(Cursor cursor)
+    {
+        return registry.getHandle(uids[cursor.next(SIZE)]);
+    }
+    
+    
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Handle<Object> mixedRegisterInvalidate()
+    {
+        Handle<Object> handle = registry.register(payload);
+        handle.invalidate();
+        
+        return handle;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import realityshard.container.network.RC4Codec;
+
+
+/**
+ * RC4 encoding and decoding of a single buffer, per payload size.
+ * (The codecs run in embedded channels, as they would in the pipeline)
+ * 
+ * @author _rusty
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RC4CodecBenchmark
+{
+    
+    static final byte[] KEY = "0123456789abcdef".getBytes();
+    
+    @Param({"16", "256", "4096"})
+    public int payloadSize;
+    
+    private ByteBuf payload;
+    private EmbeddedChannel encoder;
+    private EmbeddedChannel decoder;
+    
+    
+    @Setup
+    public void setup()
+    {
+        byte[] data = new byte[payloadSize];
+        new Random(42).nextBytes(data);
+        
+        payload = Unpooled.wrappedBuffer(data);
+        encoder = new EmbeddedChannel(new RC4Codec.Encoder(KEY));
+        decoder = new EmbeddedChannel(new RC4Codec.Decoder(KEY));
+    }
+    
+    
+    @TearDown
+    public void tearDown()
+    {
+        encoder.finish();
+        decoder.finish();
+        payload.release();
+    }
+    
+    
+    @Benchmark
+    public Object encode()
+    {
+        // the codec releases its input, so hand it a retained view
+        encoder.writeOutbound(payload.duplicate().retain());
+        
+        return release(encoder.readOutbound());
+    }
+    
+    
+    @Benchmark
+    public Object decode()
+    {
+        decoder.writeInbound(payload.duplicate().retain());
+        
+        return release(decoder.readInbound());
+    }
+    
+    
+    private static Object release(Object msg)
+    {
+        ReferenceCountUtil.release(msg);
+        return msg;
+    }
+}
@@ -5,27 +5,60 @@
 package realityshard.container;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.util.Enumeration;
+import realityshard.container.gameapp.ConfigurableGameAppFactory;
 import realityshard.container.gameapp.GameAppManager;
 import realityshard.container.gameapp.GameAppContext;
 import realityshard.container.gameapp.GameAppFactory;
+import realityshard.container.gameapp.GameAppSettings;
+import realityshard.container.gameapp.PoolableGameAppFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import realityshard.container.cluster.ClusterNode;
+import realityshard.container.cluster.RemoteGameAppContext;
+import realityshard.container.events.DispatchQueue;
+import realityshard.container.events.EventAggregator;
+import realityshard.container.events.GameAppUnloadedEvent;
+import realityshard.container.events.RingBufferEventAggregator;
+import realityshard.container.events.TickingEventAggregator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import realityshard.container.network.GameAppContextKey;
+import realityshard.container.network.MonitoredEventLoopGroup;
+import realityshard.container.network.Transport;
 import realityshard.container.util.Handle;
 import realityshard.container.util.HandleRegistry;
+import realityshard.container.util.SerialExecutor;
 
 
 /**
@@ -41,17 +74,31 @@ public final class ContainerFacade implements GameAppManager
     private static final class GameAppInfo
     {
         public GameAppFactory Factory;
+        public GameAppSettings Settings;
         public MetaGameAppContext MetaContext;
-        public NioEventLoopGroup Boss;
-        public NioEventLoopGroup Worker;
-        public NioServerSocketChannel NetworkChannel;
+        public MonitoredEventLoopGroup Boss;
+        public MonitoredEventLoopGroup Worker;
+        public Channel NetworkChannel;
+        public List<Channel> Acceptors = new ArrayList<>();
+        public GameAppPool Pool;
     }
 
     
     private final static Logger LOGGER = LoggerFactory.getLogger(ContainerFacade.class);
+    
+    private final static String METRICS_DOMAIN = "realityshard";
 
     private final Map<String, GameAppInfo> gameApps = new ConcurrentHashMap<>();
     private final HandleRegistry<GameAppContext> gameAppHandleRegistry = new HandleRegistry<>();
+    
+    // the JMX names of the metrics that this container registered, by game app uid
+    private final Map<UUID, ObjectName> metricsNames = new ConcurrentHashMap<>();
+    private final EventLoopTopology eventLoopTopology;
+
+    private volatile ClusterNode clusterNode;
+    
+    // phase name to its duration in milliseconds, in the order they finished
+    private final Map<String, Long> startupTimings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
 
     private InetAddress localAddress = null;
 
@@ -62,33 +109,87 @@ public final class ContainerFacade implements GameAppManager
      */
     public ContainerFacade(List<GameAppFactory> factories) throws Exception
     {
-        for (GameAppFactory factory : factories)
-        {
-            gameApps.put(factory.getName(), produceInfoFromFactory(factory));
-        }
-
-        // now start up all start-up apps
-        startUpApps();
+        this(factories, new EventLoopTopology());
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * The factories are set up in parallel, and then the start-up apps are created
+     * in parallel. If anything fails, the container is shut down again and the
+     * failures of all factories / apps are thrown at once (as suppressed exceptions).
+     * 
+     * @param       factories               The factories for each kind of game app. 
+     * @param       eventLoopTopology       Determines the network threads of the factories.
+     */
+    public ContainerFacade(List<GameAppFactory> factories, EventLoopTopology eventLoopTopology) throws Exception
+    {
+        this.eventLoopTopology = eventLoopTopology;
         
-        // try to get the local ip
-        // TODO: use a better method ;)
-        Enumeration<NetworkInterface> netIfaces = NetworkInterface.getNetworkInterfaces();
-        while (netIfaces.hasMoreElements()) 
+        long start = System.nanoTime();
+        int threads = Math.max(1, Math.min(factories.size(), 2 * Runtime.getRuntime().availableProcessors()));
+        ExecutorService startupPool = Executors.newFixedThreadPool(threads, new ExecutorStrategy.DaemonThreadFactory("container-startup"));
+        
+        try
         {
-            NetworkInterface cur = netIfaces.nextElement();
-            if (!cur.isUp() || cur.isLoopback() || cur.isVirtual()) { continue; }
-            
-            Enumeration<InetAddress> addr = cur.getInetAddresses();
-            while (addr.hasMoreElements())
+            // this may take a while, so do it meanwhile
+            Future<InetAddress> addressLookup = startupPool.submit(new Callable<InetAddress>()
             {
-                InetAddress curAddr = addr.nextElement();
-                if (curAddr instanceof Inet4Address)
+                @Override
+                public InetAddress call() throws Exception
                 {
-                    localAddress = curAddr;
-                    return;
+                    long lookupStart = System.nanoTime();
+                    InetAddress result = detectLocalAddress();
+                    recordTiming("local-address", lookupStart);
+                    
+                    return result;
                 }
+            });
+            
+            List<Callable<Void>> setups = new ArrayList<>();
+            
+            for (final GameAppFactory factory : factories)
+            {
+                setups.add(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        try
+                        {
+                            gameApps.put(factory.getName(), produceInfoFromFactory(factory));
+                            return null;
+                        }
+                        catch (Exception ex)
+                        {
+                            throw new Exception("Could not set up a game app factory. [name " + factory.getName() + " ]", ex);
+                        }
+                    }
+                });
             }
+            
+            runPhase("factories", startupPool, setups);
+
+            // now start up all start-up apps
+            runPhase("startup-apps", startupPool, startUpApps());
+            
+            localAddress = addressLookup.get();
         }
+        catch (Exception ex)
+        {
+            // dont leave any threads or bound ports behind
+            shutdown();
+            throw ex;
+        }
+        finally
+        {
+            startupPool.shutdown();
+        }
+        
+        recordTiming("total", start);
+        
+        LOGGER.info("Container started. [timings in ms {} ]", startupTimings);
     }
 
     
@@ -96,10 +197,24 @@ public final class ContainerFacade implements GameAppManager
      * Check if we can create a game app with a certain name
      * 
      * @param       name
-     * @return      True if we got a factory for it, false otherwise
+     * @return      True if we (or another node of the cluster) got a factory for it, false otherwise
      */
     @Override
     public boolean canCreateGameApp(String name) 
+    {
+        ClusterNode cluster = clusterNode;
+        
+        return canCreateLocalGameApp(name) || (cluster != null && cluster.canCreateRemoteGameApp(name));
+    }
+    
+    
+    /**
+     * Check if we can create a game app with a certain name on this node.
+     * 
+     * @param       name
+     * @return      True if we got a factory for it, false otherwise
+     */
+    public boolean canCreateLocalGameApp(String name) 
     {
         return gameApps.containsKey(name);
     }
@@ -107,6 +222,7 @@ public final class ContainerFacade implements GameAppManager
     
     /**
      * Create a game app by name.
+     * In cluster mode, it is created on the node with the least game apps.
      * 
      * @param       name
      * @param       parent
@@ -116,7 +232,38 @@ public final class ContainerFacade implements GameAppManager
     @Override
     public Handle<GameAppContext> createGameApp(String name, Handle<GameAppContext> parent, Map<String, String> additionalParams)
     {
-        return internalCreateGameApp(name, parent, additionalParams);
+        ClusterNode cluster = clusterNode;
+        ClusterNode.Peer placement = (cluster == null) ? null : cluster.placementFor(name);
+        
+        if (placement != null)
+        {
+            return cluster.createRemoteGameApp(placement, name, parent, additionalParams);
+        }
+        
+        return createLocalGameApp(name, parent, additionalParams);
+    }
+    
+    
+    /**
+     * Create a game app by name on this node.
+     * 
+     * @param       name
+     * @param       parent
+     * @param       additionalParams
+     * @return      The game app or null, if creation failed.
+     */
+    public Handle<GameAppContext> createLocalGameApp(String name, Handle<GameAppContext> parent, Map<String, String> additionalParams)
+    {
+        Handle<GameAppContext> result = internalCreateGameApp(name, parent, additionalParams);
+        
+        ClusterNode cluster = clusterNode;
+        
+        if (result != null && cluster != null)
+        {
+            cluster.gameAppCreated(result);
+        }
+        
+        return result;
     }
     
     
@@ -124,12 +271,83 @@ public final class ContainerFacade implements GameAppManager
      * Try get a game app handle by its unique identifier.
      * 
      * @param       gameAppUid
-     * @return      The global handle of the game app, or null.
+     * @return      The global handle of the game app (which may run on another
+     *              node of the cluster), or null. (Idle game apps of the pools
+     *              are not handed out)
      */
     @Override
     public Handle<GameAppContext> tryGetGameApp(UUID gameAppUid)
     {
-        return gameAppHandleRegistry.getHandle(gameAppUid);
+        Handle<GameAppContext> result = gameAppHandleRegistry.getHandle(gameAppUid);
+        ClusterNode cluster = clusterNode;
+        
+        if (result != null)
+        {
+            return isIdle(result) ? null : result;
+        }
+        
+        return (cluster == null) ? null : cluster.tryGetRemoteGameApp(gameAppUid);
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The game apps that run on this node (without the idle ones of the pools)
+     */
+    public List<Handle<GameAppContext>> getGameApps()
+    {
+        List<Handle<GameAppContext>> result = new ArrayList<>();
+        
+        for (Handle<GameAppContext> handle : gameAppHandleRegistry.getAllHandles())
+        {
+            GameAppInfo gameAppInfo = gameApps.get(handle.get().getName());
+            
+            if (gameAppInfo != null && gameAppInfo.MetaContext.contains(handle.get()))
+            {
+                result.add(handle);
+            }
+        }
+        
+        return result;
+    }
+    
+    
+    /**
+     * Check if a local game app waits in the pool of its factory (or is being
+     * prepared or recycled), so it must not be visible to other game apps yet.
+     */
+    private boolean isIdle(Handle<GameAppContext> that)
+    {
+        GameAppInfo gameAppInfo = gameApps.get(that.get().getName());
+        
+        return gameAppInfo != null 
+                && gameAppInfo.Factory instanceof PoolableGameAppFactory 
+                && !gameAppInfo.MetaContext.contains(that.get());
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The names of the game apps that this node can create.
+     */
+    public Set<String> getFactoryNames()
+    {
+        return new HashSet<>(gameApps.keySet());
+    }
+    
+    
+    /**
+     * Setter.
+     * Called by the cluster node when it is started (or shut down)
+     * 
+     * @param       clusterNode             The node that connects this container
+     *                                      with the others, or null.
+     */
+    public void setClusterNode(ClusterNode clusterNode)
+    {
+        this.clusterNode = clusterNode;
     }
 
     
@@ -141,14 +359,50 @@ public final class ContainerFacade implements GameAppManager
     @Override
     public void removeGameApp(Handle<GameAppContext> that) 
     {
+        ClusterNode cluster = clusterNode;
+        
+        if (that.get() instanceof RemoteGameAppContext)
+        {
+            if (cluster != null) { cluster.removeRemoteGameApp((RemoteGameAppContext) that.get()); }
+            return;
+        }
+        
         GameAppInfo gameAppInfo = gameApps.get(that.get().getName());
         
         if (gameAppInfo == null) { LOGGER.error("Game app doesnt exist! [name {} ]", that.get().getName()); return; }
         
+        if (cluster != null) { cluster.gameAppRemoved(that); }
+        
+        unregisterMetrics(that);
+        
+        if (gameAppInfo.Factory instanceof PoolableGameAppFactory)
+        {
+            recycleGameApp(gameAppInfo, that);
+            return;
+        }
+        
         gameAppInfo.MetaContext.shutdown(that.get());
     }   
     
     
+    /**
+     * Getter.
+     * 
+     * Game app instances can use the meta context to claim channels or register
+     * routing keys, before the clients even connected.
+     * 
+     * @param       name                    The name of the game app.
+     * @return      The context that distributes the events of unassigned clients
+     *              to the instances of that game app, or null.
+     */
+    public MetaGameAppContext getMetaContext(String name)
+    {
+        GameAppInfo gameAppInfo = gameApps.get(name);
+        
+        return (gameAppInfo == null) ? null : gameAppInfo.MetaContext;
+    }
+    
+    
     /**
      * Getter.
      * 
@@ -158,11 +412,16 @@ public final class ContainerFacade implements GameAppManager
     @Override
     public InetSocketAddress localAddressFor(Handle<GameAppContext> that) 
     {
+        if (that.get() instanceof RemoteGameAppContext)
+        {
+            return ((RemoteGameAppContext) that.get()).getAddress();
+        }
+        
         GameAppInfo gameAppInfo = gameApps.get(that.get().getName());
         
         if (gameAppInfo == null) { LOGGER.error("Game app doesnt exist! [name {} ]", that.get().getName()); return null; }
         
-        int port = gameAppInfo.NetworkChannel.localAddress().getPort();
+        int port = ((InetSocketAddress) gameAppInfo.NetworkChannel.localAddress()).getPort();
         
         // always return the address of this server...
         // the parameter is important when we do remoting
@@ -175,17 +434,132 @@ public final class ContainerFacade implements GameAppManager
     }
     
 
+    /**
+     * Getter.
+     * 
+     * @return      The durations of the startup phases in milliseconds
+     *              (factories, startup-apps, local-address and total)
+     */
+    public Map<String, Long> getStartupTimings()
+    {
+        synchronized (startupTimings)
+        {
+            return new LinkedHashMap<>(startupTimings);
+        }
+    }
+    
+
     /**
      * Load all apps that have the "start-up" marker
+     * 
+     * @return      The tasks that create the apps.
      */
-    private void startUpApps()
+    private List<Callable<Void>> startUpApps()
     {
-        for (GameAppInfo gameAppInfo : gameApps.values())
+        List<Callable<Void>> result = new ArrayList<>();
+        
+        for (final GameAppInfo gameAppInfo : gameApps.values())
         {
             if (!gameAppInfo.Factory.isStartup()) { continue; }
-
-            internalCreateGameApp(gameAppInfo.Factory.getName(), null, new HashMap<String, String>());
+            
+            result.add(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    Handle<GameAppContext> created;
+                    
+                    try
+                    {
+                        created = internalCreateGameApp(gameAppInfo.Factory.getName(), null, new HashMap<String, String>());
+                    }
+                    catch (RuntimeException ex)
+                    {
+                        throw new Exception("Could not create a start-up app. [name " + gameAppInfo.Factory.getName() + " ]", ex);
+                    }
+                    
+                    // the factory refused (it already logged why), but the container
+                    // must not come up without its start-up apps
+                    if (created == null)
+                    {
+                        throw new Exception("Could not create a start-up app. [name " + gameAppInfo.Factory.getName() + " ]");
+                    }
+                    
+                    return null;
+                }
+            });
+        }
+        
+        return result;
+    }
+    
+    
+    /**
+     * Run the tasks of a startup phase in parallel, and wait for all of them.
+     * 
+     * @throws      Exception               If any task failed. The failures of all tasks
+     *                                      are added as suppressed exceptions.
+     */
+    private void runPhase(String phase, ExecutorService pool, List<Callable<Void>> tasks) throws Exception
+    {
+        long start = System.nanoTime();
+        Exception failure = null;
+        
+        for (Future<Void> result : pool.invokeAll(tasks))
+        {
+            try
+            {
+                result.get();
+            }
+            catch (ExecutionException ex)
+            {
+                if (failure == null) { failure = new Exception("The container failed to start. [phase " + phase + " ]"); }
+                
+                failure.addSuppressed(ex.getCause());
+            }
+        }
+        
+        recordTiming(phase, start);
+        
+        if (failure != null) { throw failure; }
+    }
+    
+    
+    /**
+     * Remember the duration of a startup phase.
+     */
+    private void recordTiming(String phase, long start)
+    {
+        startupTimings.put(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    
+    /**
+     * Try to get the local ip.
+     * TODO: use a better method ;)
+     * 
+     * @return      The first IPv4 address of an active interface, or null.
+     */
+    private static InetAddress detectLocalAddress() throws Exception
+    {
+        Enumeration<NetworkInterface> netIfaces = NetworkInterface.getNetworkInterfaces();
+        while (netIfaces.hasMoreElements()) 
+        {
+            NetworkInterface cur = netIfaces.nextElement();
+            if (!cur.isUp() || cur.isLoopback() || cur.isVirtual()) { continue; }
+            
+            Enumeration<InetAddress> addr = cur.getInetAddresses();
+            while (addr.hasMoreElements())
+            {
+                InetAddress curAddr = addr.nextElement();
+                if (curAddr instanceof Inet4Address)
+                {
+                    return curAddr;
+                }
+            }
         }
+        
+        return null;
     }
 
 
@@ -194,13 +568,36 @@ public final class ContainerFacade implements GameAppManager
      */
     public void shutdown()
     {
+        ClusterNode cluster = clusterNode;
+        
+        if (cluster != null) { cluster.shutdown(); }
+        
         for (Map.Entry<String, GameAppInfo> entry : gameApps.entrySet()) 
         {
             GameAppInfo gameAppInfo = entry.getValue();
             
+            if (gameAppInfo.Pool != null) { gameAppInfo.Pool.shutdown(); }
+            
             gameAppInfo.MetaContext.shutdown();
-            gameAppInfo.NetworkChannel.close().syncUninterruptibly();
+            closeAcceptors(gameAppInfo);
+            
+            gameAppInfo.Settings.getExecutorStrategy().shutdown();
         }
+        
+        eventLoopTopology.shutdown();
+        
+        unregisterMetrics(null);
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The network threads of this container (e.g. to watch their utilization)
+     */
+    public EventLoopTopology getEventLoopTopology()
+    {
+        return eventLoopTopology;
     }
     
     
@@ -211,24 +608,179 @@ public final class ContainerFacade implements GameAppManager
     {
         GameAppInfo result = new GameAppInfo();
         result.Factory = factory;
-        result.MetaContext = new MetaGameAppContext(factory.getName(), this);
+        result.Settings = new GameAppSettings();
+        
+        // let the factory change the default settings if it wants to
+        if (factory instanceof ConfigurableGameAppFactory)
+        {
+            ((ConfigurableGameAppFactory) factory).configure(result.Settings);
+        }
+        
+        result.MetaContext = new MetaGameAppContext(factory.getName(), this, result.Settings.isInterestFiltering());
         
         // register the metacontext with its own aggregator
         result.MetaContext.getEventAggregator().register(result.MetaContext);
         
-        result.Boss = new NioEventLoopGroup();
-        result.Worker = new NioEventLoopGroup();
+        try
+        {
+            if (!result.Settings.isLazyBinding())
+            {
+                bindServerChannel(result);
+            }
+            
+            if (factory instanceof PoolableGameAppFactory && result.Settings.getMaxPooledInstances() > 0)
+            {
+                result.Pool = produceGameAppPool(result);
+                result.Pool.refill();
+            }
+        }
+        catch (Exception ex)
+        {
+            // this info never makes it into the container, so shutdown wont close
+            // the ports that are bound already (e.g. if a further acceptor failed)
+            if (result.Pool != null) { result.Pool.shutdown(); }
+            closeAcceptors(result);
+            throw ex;
+        }
+        
+        return result;
+    }
+    
+    
+    /**
+     * Bind the server channel(s) of a factory, if that didnt happen yet.
+     */
+    private void bindServerChannel(GameAppInfo result) throws Exception
+    {
+        GameAppFactory factory = result.Factory;
+        
+        synchronized (result)
+        {
+            if (result.NetworkChannel != null) { return; }
+            
+            // keep the groups of a failed attempt for the next one, instead of
+            // creating new (dedicated) groups each time
+            if (result.Boss == null)
+            {
+                result.Boss = eventLoopTopology.bossGroupFor(factory.getName(), result.Settings);
+            }
+            
+            result.Worker = workerGroupOf(result);
+            
+            ServerBootstrap bootstrap = new ServerBootstrap();
+            bootstrap.group(result.Boss.getGroup(), result.Worker.getGroup())
+                     .channel(eventLoopTopology.getTransport().getServerChannelClass())
+                     .childAttr(GameAppContextKey.KEY, result.MetaContext)
+                     .childAttr(GameAppContextKey.IS_SET, false)
+                     .option(ChannelOption.SO_BACKLOG, 1000);
+            
+            int acceptors = result.Settings.getAcceptors();
+            
+            if (eventLoopTopology.getTransport() == Transport.EPOLL)
+            {
+                bootstrap.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+            
+                // several acceptors can only bind the same port with this
+                if (acceptors > 1) { bootstrap.option(EpollChannelOption.SO_REUSEPORT, true); }
+            }
+            else if (acceptors > 1)
+            {
+                LOGGER.warn("Multiple acceptors need the epoll transport, using only one. [name {} ]", factory.getName());
+                acceptors = 1;
+            }
+            
+            result.NetworkChannel = factory.getServerChannel(bootstrap);
+            result.Acceptors.add(result.NetworkChannel);
+            
+            // the other acceptors use the bootstrap as the factory configured it
+            for (int i = 1; i < acceptors; i++)
+            {
+                result.Acceptors.add(bootstrap.bind(result.NetworkChannel.localAddress()).sync().channel());
+            }
+        }
+    }
+    
+    
+    /**
+     * Close the server channels of a factory.
+     */
+    private static void closeAcceptors(GameAppInfo gameAppInfo)
+    {
+        synchronized (gameAppInfo)
+        {
+            for (Channel acceptor : gameAppInfo.Acceptors)
+            {
+                acceptor.close().syncUninterruptibly();
+            }
+        }
+    }
+    
+    
+    /**
+     * Get the worker group of a factory (this may be needed before the server channel is bound)
+     */
+    private MonitoredEventLoopGroup workerGroupOf(GameAppInfo gameAppInfo)
+    {
+        synchronized (gameAppInfo)
+        {
+            if (gameAppInfo.Worker == null)
+            {
+                gameAppInfo.Worker = eventLoopTopology.workerGroupFor(gameAppInfo.Factory.getName(), gameAppInfo.Settings);
+            }
+            
+            return gameAppInfo.Worker;
+        }
+    }
+    
+    
+    /**
+     * Pick the home event loop of a new game app.
+     * 
+     * @return      The event loop, or null if the game apps of that factory have none.
+     */
+    private EventLoop homeEventLoopOf(GameAppInfo gameAppInfo)
+    {
+        if (!gameAppInfo.Settings.isEventLoopAffinity()) { return null; }
+        
+        // the group hands out its loops round robin
+        return workerGroupOf(gameAppInfo).getGroup().next();
+    }
+    
+    
+    /**
+     * Create the event aggregator of a new game app.
+     */
+    private EventAggregator produceAggregator(GameAppSettings settings, EventLoop homeEventLoop)
+    {
+        if (settings.getTickIntervalMillis() > 0)
+        {
+            // events are handled in batches, once per tick
+            ScheduledExecutorService scheduler = (homeEventLoop == null) ? GlobalExecutor.get() : homeEventLoop;
+            return new TickingEventAggregator(scheduler, settings.getTickIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        
+        if (settings.getRingBufferSize() > 0)
+        {
+            // this one doesnt use the executor at all
+            return new RingBufferEventAggregator(settings.getRingBufferSize());
+        }
         
-        ServerBootstrap bootstrap = new ServerBootstrap();
-        bootstrap.group(result.Boss, result.Worker)
-                 .channel(NioServerSocketChannel.class)
-                 .childAttr(GameAppContextKey.KEY, result.MetaContext)
-                 .childAttr(GameAppContextKey.IS_SET, false)
-                 .option(ChannelOption.SO_BACKLOG, 1000);
+        Executor executor = (homeEventLoop == null) ? settings.getExecutorStrategy().createExecutor() : homeEventLoop;
         
-        result.NetworkChannel = (NioServerSocketChannel) factory.getServerChannel(bootstrap);
+        // an event loop runs the handlers one after another anyway
+        if (settings.isSerialDispatch() && homeEventLoop == null)
+        {
+            // each game app gets its own mailbox
+            executor = new SerialExecutor(executor, settings.getSerialDispatchBatchSize());
+        }
         
-        return result;
+        if (settings.getDispatchQueueCapacity() > 0)
+        {
+            // limit the amount of queued handler calls
+            executor = new DispatchQueue(executor, settings.getDispatchQueueCapacity(), settings.getOverflowPolicy());
+        }
+        
+        return new EventAggregator(executor, settings.getDispatchMode());
     }
     
     
@@ -241,23 +793,226 @@ public final class ContainerFacade implements GameAppManager
         
         if (gameAppInfo == null) { LOGGER.error("Game app doesnt exist! [name {} ]", name); return null; }
         
-        // create the context for the app
-        GameAppContext context = new GameAppContext.Default(name, this, parent);
+        // factories with lazy binding open their port for the first app
+        try
+        {
+            bindServerChannel(gameAppInfo);
+        }
+        catch (Exception ex)
+        {
+            LOGGER.error("Failed to bind the server channel of a game app! [name {} ]", name, ex);
+            return null;
+        }
         
-        // register it
-        Handle<GameAppContext> contextHandle = gameAppHandleRegistry.register(context);
+        Handle<GameAppContext> contextHandle;
         
-        // create the app
-        if (!gameAppInfo.Factory.initGameApp(contextHandle, parent, additionalParams))
+        if (gameAppInfo.Factory instanceof PoolableGameAppFactory)
         {
-            LOGGER.error("Failed to create game app! [name {} ]", gameAppInfo.Factory.getName());
-            contextHandle.invalidate();
-            return null;
+            contextHandle = activateGameApp(gameAppInfo, parent, additionalParams);
+            
+            if (contextHandle == null) { return null; }
+        }
+        else
+        {
+            // create the context for the app
+            EventLoop homeEventLoop = homeEventLoopOf(gameAppInfo);
+            GameAppContext context = new GameAppContext.Default(name, this, parent, produceAggregator(gameAppInfo.Settings, homeEventLoop), homeEventLoop);
+
+            // register it
+            contextHandle = gameAppHandleRegistry.register(context);
+
+            // create the app
+            if (!gameAppInfo.Factory.initGameApp(contextHandle, parent, additionalParams))
+            {
+                LOGGER.error("Failed to create game app! [name {} ]", gameAppInfo.Factory.getName());
+                contextHandle.invalidate();
+                return null;
+            }
         }
 
         // dont forget to add it to the metacontext
-        gameAppInfo.MetaContext.addContext(context);
+        gameAppInfo.MetaContext.addContext(contextHandle.get());
+        
+        if (gameAppInfo.Settings.isDispatchMetrics())
+        {
+            registerMetrics(contextHandle);
+        }
 
         return contextHandle;
     }
+    
+    
+    /**
+     * Take a prepared game app of a poolable factory (or prepare one right now)
+     * and activate it.
+     * 
+     * @return      The game app, or null if that failed.
+     */
+    private Handle<GameAppContext> activateGameApp(GameAppInfo gameAppInfo, Handle<GameAppContext> parent, Map<String, String> additionalParams)
+    {
+        Handle<GameAppContext> contextHandle = (gameAppInfo.Pool == null) ? null : gameAppInfo.Pool.poll();
+        
+        if (contextHandle == null)
+        {
+            // no warm one available, the caller has to wait
+            contextHandle = prepareGameApp(gameAppInfo);
+            
+            if (contextHandle == null) { return null; }
+        }
+        
+        ((GameAppContext.Default) contextHandle.get()).setParentContext(parent);
+        
+        if (!((PoolableGameAppFactory) gameAppInfo.Factory).activateGameApp(contextHandle, parent, additionalParams))
+        {
+            LOGGER.error("Failed to activate game app! [name {} ]", gameAppInfo.Factory.getName());
+            unloadGameApp(contextHandle);
+            return null;
+        }
+        
+        return contextHandle;
+    }
+    
+    
+    /**
+     * Create and prepare a new game app of a poolable factory.
+     * 
+     * @return      The game app, or null if that failed.
+     */
+    private Handle<GameAppContext> prepareGameApp(GameAppInfo gameAppInfo)
+    {
+        String name = gameAppInfo.Factory.getName();
+        EventLoop homeEventLoop = homeEventLoopOf(gameAppInfo);
+        GameAppContext context = new GameAppContext.Default(name, this, null, produceAggregator(gameAppInfo.Settings, homeEventLoop), homeEventLoop);
+        Handle<GameAppContext> contextHandle = gameAppHandleRegistry.register(context);
+        
+        if (!((PoolableGameAppFactory) gameAppInfo.Factory).prepareGameApp(contextHandle))
+        {
+            LOGGER.error("Failed to prepare game app! [name {} ]", name);
+            unloadGameApp(contextHandle);
+            return null;
+        }
+        
+        return contextHandle;
+    }
+    
+    
+    /**
+     * Put a removed game app of a poolable factory back into the pool,
+     * or unload it if the factory or the pool dont want it.
+     */
+    private void recycleGameApp(GameAppInfo gameAppInfo, Handle<GameAppContext> that)
+    {
+        // failchecks first (this also makes sure we recycle it only once)
+        if (!gameAppInfo.MetaContext.removeContext(that.get())) { return; }
+        
+        if (gameAppInfo.Pool != null && ((PoolableGameAppFactory) gameAppInfo.Factory).recycleGameApp(that))
+        {
+            // others may still hold the old handle, so the recycled game app gets a new identity
+            that.invalidate();
+            Handle<GameAppContext> fresh = gameAppHandleRegistry.register(that.get());
+            
+            if (gameAppInfo.Pool.offer(fresh)) { return; }
+            
+            that = fresh;
+        }
+        
+        unloadGameApp(that);
+    }
+    
+    
+    /**
+     * Unload a game app that is not managed by a meta context.
+     */
+    private void unloadGameApp(Handle<GameAppContext> that)
+    {
+        that.get().trigger(new GameAppUnloadedEvent());
+        that.get().getEventAggregator().shutdown();
+        that.invalidate();
+    }
+    
+    
+    /**
+     * Create the pool of prepared game apps of a poolable factory.
+     */
+    private GameAppPool produceGameAppPool(final GameAppInfo gameAppInfo)
+    {
+        return new GameAppPool(gameAppInfo.Factory.getName(), gameAppInfo.Settings.getMinPooledInstances(), gameAppInfo.Settings.getMaxPooledInstances())
+        {
+            @Override
+            protected Handle<GameAppContext> prepare()
+            {
+                return prepareGameApp(gameAppInfo);
+            }
+            
+            
+            @Override
+            protected void destroy(Handle<GameAppContext> gameApp)
+            {
+                unloadGameApp(gameApp);
+            }
+        };
+    }
+    
+    
+    /**
+     * Enable the dispatch metrics of a game app and publish them via JMX.
+     */
+    private void registerMetrics(Handle<GameAppContext> that)
+    {
+        that.get().getEventAggregator().getMetrics().setEnabled(true);
+        
+        try
+        {
+            ObjectName name = metricsNameOf(that.get().getName(), that.getUid());
+            
+            ManagementFactory.getPlatformMBeanServer().registerMBean(that.get().getEventAggregator().getMetrics(), name);
+            metricsNames.put(that.getUid(), name);
+        }
+        catch (JMException ex)
+        {
+            LOGGER.warn("Could not register the dispatch metrics of a game app.", ex);
+        }
+    }
+    
+    
+    /**
+     * Remove the dispatch metrics of a game app from JMX.
+     * 
+     * @param       that                    The game app, or null for all game apps
+     *                                      of this container.
+     */
+    private void unregisterMetrics(Handle<GameAppContext> that)
+    {
+        Collection<UUID> uids = (that == null) ? 
+                new ArrayList<>(metricsNames.keySet()) : 
+                Collections.singleton(that.getUid());
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        
+        for (UUID uid : uids)
+        {
+            ObjectName name = metricsNames.remove(uid);
+            
+            if (name == null) { continue; }
+            
+            try
+            {
+                server.unregisterMBean(name);
+            }
+            catch (JMException ex)
+            {
+                LOGGER.warn("Could not unregister the dispatch metrics of a game app.", ex);
+            }
+        }
+    }
+    
+    
+    /**
+     * Build the JMX name of the dispatch metrics of a game app. 
+     * (The name of the game app is quoted, as it may contain any character)
+     */
+    private static ObjectName metricsNameOf(String name, UUID uid) throws JMException
+    {
+        return new ObjectName(METRICS_DOMAIN + ":type=EventAggregator,name=" + ObjectName.quote(name) + ",uid=" + uid);
+    }
 }
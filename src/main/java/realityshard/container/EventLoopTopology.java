@@ -0,0 +1,264 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import realityshard.container.gameapp.GameAppSettings;
+import realityshard.container.network.MonitoredEventLoopGroup;
+import realityshard.container.network.Transport;
+
+
+/**
+ * Determines the netty event loop groups (the network threads) of the container.
+ * 
+ * By default, all game app factories share one boss and one worker group. 
+ * A factory can get dedicated groups instead, by setting their sizes in its 
+ * settings (see GameAppSettings.setBossThreads and setWorkerThreads).
+ * 
+ * All groups report their thread counts and utilization, and are published via
+ * JMX as realityshard:type=EventLoopGroup,name=[topology]-[group]. The name of the
+ * topology keeps the groups (and their threads) of several containers in one JVM
+ * apart (see setName).
+ * 
+ * The groups use NIO by default. On Linux, the native epoll transport can be
+ * selected instead, which allows factories to have several acceptors
+ * on the same port (see GameAppSettings.setAcceptors)
+ * 
+ * (All setters are fluent methods, and must be called before the container starts)
+ * 
+ * @author _rusty
+ */
+public class EventLoopTopology
+{
+    
+    private final static Logger LOGGER = LoggerFactory.getLogger(EventLoopTopology.class);
+    
+    // numbers the topologies that dont have an explicit name
+    private final static AtomicInteger COUNT = new AtomicInteger();
+    
+    private String name = "container-" + COUNT.incrementAndGet();
+    private Transport transport = Transport.NIO;
+    private int sharedBossThreads = 1;
+    private int sharedWorkerThreads = 0;
+    
+    private MonitoredEventLoopGroup sharedBoss;
+    private MonitoredEventLoopGroup sharedWorker;
+    private final List<MonitoredEventLoopGroup> groups = new ArrayList<>();
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The prefix of the names of the groups.
+     */
+    public String getName()
+    {
+        return name;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * @param       name                    The prefix of the names of the groups, which 
+     *                                      must be unique within the JVM. 
+     *                                      Default is container-[number].
+     * @return      This topology.
+     */
+    public EventLoopTopology setName(String name)
+    {
+        if (name == null || name.isEmpty()) { throw new IllegalArgumentException("The name must not be empty."); }
+        
+        this.name = name;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The transport of the network threads and channels.
+     */
+    public Transport getTransport()
+    {
+        return transport;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * Falls back to NIO if the transport is not available on this machine.
+     * 
+     * @param       transport               The transport, e.g. Transport.EPOLL on Linux.
+     * @return      This topology.
+     */
+    public EventLoopTopology setTransport(Transport transport)
+    {
+        if (!transport.isAvailable())
+        {
+            LOGGER.warn("The network transport is not available, using NIO instead. [transport {} ]", transport);
+            transport = Transport.NIO;
+        }
+        
+        this.transport = transport;
+        return this;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * @param       sharedBossThreads       The amount of threads of the shared boss group
+     *                                      (accepting connections). Default is 1.
+     *                                      Use more if factories have several acceptors.
+     * @return      This topology.
+     */
+    public EventLoopTopology setSharedBossThreads(int sharedBossThreads)
+    {
+        if (sharedBossThreads < 1) { throw new IllegalArgumentException("There must be at least one boss thread."); }
+        
+        this.sharedBossThreads = sharedBossThreads;
+        return this;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * @param       sharedWorkerThreads     The amount of threads of the shared worker group
+     *                                      (handling the connections), or 0 for netty's default
+     *                                      (twice the amount of cores)
+     * @return      This topology.
+     */
+    public EventLoopTopology setSharedWorkerThreads(int sharedWorkerThreads)
+    {
+        if (sharedWorkerThreads < 0) { throw new IllegalArgumentException("The amount of worker threads must not be negative."); }
+        
+        this.sharedWorkerThreads = sharedWorkerThreads;
+        return this;
+    }
+    
+    
+    /**
+     * Get the boss group of a factory.
+     * 
+     * @param       factoryName             The name of the game app factory.
+     * @param       settings                The settings of the factory.
+     * @return      The shared group, or a new dedicated one.
+     */
+    public synchronized MonitoredEventLoopGroup bossGroupFor(String factoryName, GameAppSettings settings)
+    {
+        if (settings.getBossThreads() > 0)
+        {
+            return createGroup(factoryName + "-boss", settings.getBossThreads());
+        }
+        
+        if (sharedBoss == null)
+        {
+            sharedBoss = createGroup("shared-boss", sharedBossThreads);
+        }
+        
+        return sharedBoss;
+    }
+    
+    
+    /**
+     * Get the worker group of a factory.
+     * 
+     * @param       factoryName             The name of the game app factory.
+     * @param       settings                The settings of the factory.
+     * @return      The shared group, or a new dedicated one.
+     */
+    public synchronized MonitoredEventLoopGroup workerGroupFor(String factoryName, GameAppSettings settings)
+    {
+        if (settings.getWorkerThreads() > 0)
+        {
+            return createGroup(factoryName + "-worker", settings.getWorkerThreads());
+        }
+        
+        if (sharedWorker == null)
+        {
+            sharedWorker = createGroup("shared-worker", sharedWorkerThreads);
+        }
+        
+        return sharedWorker;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      All groups that have been created so far.
+     */
+    public synchronized List<MonitoredEventLoopGroup> getGroups()
+    {
+        return new ArrayList<>(groups);
+    }
+    
+    
+    /**
+     * Shut down all groups, and remove them from JMX.
+     */
+    public synchronized void shutdown()
+    {
+        for (MonitoredEventLoopGroup group : groups)
+        {
+            group.getGroup().shutdownGracefully();
+            
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsNameOf(group));
+            }
+            catch (JMException ex)
+            {
+                LOGGER.debug("Could not unregister the metrics of an event loop group.", ex);
+            }
+        }
+        
+        groups.clear();
+        sharedBoss = null;
+        sharedWorker = null;
+    }
+    
+    
+    /**
+     * Create a new group and publish its metrics.
+     */
+    private MonitoredEventLoopGroup createGroup(String groupName, int threads)
+    {
+        MonitoredEventLoopGroup group = new MonitoredEventLoopGroup(name + "-" + groupName, threads, transport);
+        groups.add(group);
+        
+        LOGGER.debug("Created an event loop group [name {} ] [threads {} ] [transport {} ]", new Object[] { group.getName(), group.getThreadCount(), transport });
+        
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(group, metricsNameOf(group));
+        }
+        catch (JMException ex)
+        {
+            LOGGER.warn("Could not register the metrics of an event loop group.", ex);
+        }
+        
+        return group;
+    }
+    
+    
+    /**
+     * Build the JMX name of a group.
+     */
+    private static ObjectName metricsNameOf(MonitoredEventLoopGroup group) throws JMException
+    {
+        return new ObjectName("realityshard:type=EventLoopGroup,name=" + ObjectName.quote(group.getName()));
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Determines which threads run the event handlers of the game apps 
+ * of one factory. (See GameAppSettings.setExecutorStrategy)
+ * 
+ * Game apps with different workloads can use different strategies, e.g.
+ * a login app that blocks on database lookups should not share its
+ * threads with CPU-bound zone apps.
+ * 
+ * @author _rusty
+ */
+public interface ExecutorStrategy
+{
+    
+    /**
+     * Get the executor for a new game app.
+     * This is called once for each game app that is created.
+     * 
+     * @return      The executor that runs the event handlers of the game app.
+     */
+    public Executor createExecutor();
+    
+    
+    /**
+     * Stop the threads of this strategy (if it owns any).
+     * This may be called more than once.
+     */
+    public void shutdown();
+    
+    
+    /**
+     * Creates named daemon threads, so the strategies dont keep the JVM alive.
+     */
+    public static final class DaemonThreadFactory implements ThreadFactory
+    {
+        
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+        
+        
+        /**
+         * Constructor.
+         * 
+         * @param       name                    The prefix of the thread names.
+         */
+        public DaemonThreadFactory(String name)
+        {
+            this.name = name;
+        }
+        
+        
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
+    
+    /**
+     * Uses the global executor of the host application (the default).
+     */
+    public static final class Global implements ExecutorStrategy
+    {
+        
+        @Override
+        public Executor createExecutor()
+        {
+            return GlobalExecutor.get();
+        }
+        
+        
+        @Override
+        public void shutdown()
+        {
+            // the host application owns that executor
+        }
+    }
+    
+    
+    /**
+     * Uses a work-stealing fork-join pool, which is good for many short,
+     * CPU-bound handlers. (The pool is in async mode, so queued handler calls
+     * are run in FIFO order)
+     */
+    public static final class WorkStealing implements ExecutorStrategy
+    {
+        
+        private final ForkJoinPool pool;
+        
+        
+        /**
+         * Constructor.
+         * Creates a pool with one thread per core.
+         */
+        public WorkStealing()
+        {
+            this(Runtime.getRuntime().availableProcessors());
+        }
+        
+        
+        /**
+         * Constructor.
+         * 
+         * @param       parallelism             The amount of worker threads.
+         */
+        public WorkStealing(int parallelism)
+        {
+            pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+        
+        
+        @Override
+        public Executor createExecutor()
+        {
+            return pool;
+        }
+        
+        
+        @Override
+        public void shutdown()
+        {
+            pool.shutdown();
+        }
+    }
+    
+    
+    /**
+     * Uses one thread per core, and pins each game app to one of these threads
+     * (round robin). The handlers of a game app then always run on the same
+     * thread, one after another, which keeps their data in that core's cache
+     * and needs no further synchronization.
+     * 
+     * (The JVM cannot bind threads to specific cores, so the OS scheduler 
+     * still decides which core a thread runs on)
+     */
+    public static final class ThreadPerCore implements ExecutorStrategy
+    {
+        
+        private final ExecutorService[] lanes;
+        private final AtomicInteger next = new AtomicInteger();
+        
+        
+        /**
+         * Constructor.
+         * Creates one thread per core.
+         */
+        public ThreadPerCore()
+        {
+            this(Runtime.getRuntime().availableProcessors());
+        }
+        
+        
+        /**
+         * Constructor.
+         * 
+         * @param       threads                 The amount of threads.
+         */
+        public ThreadPerCore(int threads)
+        {
+            if (threads < 1) { throw new IllegalArgumentException("There must be at least one thread."); }
+            
+            lanes = new ExecutorService[threads];
+            
+            for (int i = 0; i < threads; i++)
+            {
+                lanes[i] = Executors.newSingleThreadExecutor(new DaemonThreadFactory("game-app-core-" + i));
+            }
+        }
+        
+        
+        @Override
+        public Executor createExecutor()
+        {
+            return lanes[(next.getAndIncrement() & Integer.MAX_VALUE) % lanes.length];
+        }
+        
+        
+        @Override
+        public void shutdown()
+        {
+            for (ExecutorService lane : lanes)
+            {
+                lane.shutdown();
+            }
+        }
+    }
+    
+    
+    /**
+     * Runs each handler call in a thread of its own, for handlers that block
+     * on I/O (like database lookups).
+     * 
+     * Uses virtual threads if the JVM supports them (Java 21 and later), 
+     * otherwise falls back to an unbounded pool of (reused) platform threads.
+     */
+    public static final class ThreadPerTask implements ExecutorStrategy
+    {
+        
+        private static final Logger LOGGER = LoggerFactory.getLogger(ThreadPerTask.class);
+        
+        private final ExecutorService executor;
+        private final boolean virtual;
+        
+        
+        /**
+         * Constructor.
+         */
+        public ThreadPerTask()
+        {
+            ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+            
+            virtual = (virtualExecutor != null);
+            executor = virtual ? virtualExecutor : Executors.newCachedThreadPool(new DaemonThreadFactory("game-app-blocking"));
+        }
+        
+        
+        /**
+         * Getter.
+         * 
+         * @return      True if this strategy uses virtual threads.
+         */
+        public boolean isVirtual()
+        {
+            return virtual;
+        }
+        
+        
+        @Override
+        public Executor createExecutor()
+        {
+            return executor;
+        }
+        
+        
+        @Override
+        public void shutdown()
+        {
+            executor.shutdown();
+        }
+        
+        
+        /**
+         * Try to create a virtual thread executor.
+         * (We compile against Java 7, so this needs reflection)
+         * 
+         * @return      The executor, or null if the JVM doesnt have virtual threads.
+         */
+        private static ExecutorService newVirtualThreadPerTaskExecutor()
+        {
+            try
+            {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                
+                return (ExecutorService) factory.invoke(null);
+            }
+            catch (NoSuchMethodException ex)
+            {
+                LOGGER.debug("The JVM has no virtual threads, using a cached thread pool instead.");
+                return null;
+            }
+            catch (ReflectiveOperationException | RuntimeException ex)
+            {
+                // e.g. if virtual threads are a preview feature that is not enabled
+                LOGGER.warn("Could not create a virtual thread executor, using a cached thread pool instead.", ex);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import realityshard.container.gameapp.GameAppContext;
+import realityshard.container.util.Handle;
+
+
+/**
+ * The prepared (idle) game apps of a poolable factory.
+ * 
+ * Whenever the amount of idle game apps drops below the minimum, new ones are
+ * prepared by a background thread. Recycled game apps are kept up to the maximum.
+ * 
+ * @author _rusty
+ */
+abstract class GameAppPool
+{
+    
+    private final static Logger LOGGER = LoggerFactory.getLogger(GameAppPool.class);
+    
+    private final String name;
+    private final int minIdle;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Handle<GameAppContext>> idle = new ConcurrentLinkedQueue<>();
+    
+    // idle game apps plus the ones that are being prepared
+    private final AtomicInteger size = new AtomicInteger();
+    private final ExecutorService refiller;
+    private volatile boolean running = true;
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       name                    The name of the game app.
+     * @param       minIdle                 The amount of game apps that are kept prepared.
+     * @param       maxIdle                 The maximum amount of idle game apps.
+     */
+    GameAppPool(String name, int minIdle, int maxIdle)
+    {
+        this.name = name;
+        this.minIdle = minIdle;
+        this.maxIdle = maxIdle;
+        this.refiller = Executors.newSingleThreadExecutor(new ExecutorStrategy.DaemonThreadFactory("game-app-pool-" + name));
+    }
+    
+    
+    /**
+     * Factory method.
+     * Prepare a new game app.
+     * 
+     * @return      The handle of the new game app, or null if that failed.
+     */
+    protected abstract Handle<GameAppContext> prepare();
+    
+    
+    /**
+     * Unload an idle game app that is not needed anymore.
+     * 
+     * @param       gameApp                 The game app.
+     */
+    protected abstract void destroy(Handle<GameAppContext> gameApp);
+    
+    
+    /**
+     * Take an idle game app.
+     * 
+     * @return      The game app, or null if there is none right now.
+     */
+    public Handle<GameAppContext> poll()
+    {
+        Handle<GameAppContext> result = idle.poll();
+        
+        if (result != null) { size.decrementAndGet(); }
+        
+        refill();
+        return result;
+    }
+    
+    
+    /**
+     * Put a recycled game app back into the pool.
+     * 
+     * @param       gameApp                 The game app.
+     * @return      True if it was taken, false if the pool is full.
+     */
+    public boolean offer(Handle<GameAppContext> gameApp)
+    {
+        int current;
+        
+        do
+        {
+            current = size.get();
+            
+            if (!running || current >= maxIdle) { return false; }
+        }
+        while (!size.compareAndSet(current, current + 1));
+        
+        idle.add(gameApp);
+        return true;
+    }
+    
+    
+    /**
+     * Prepare new game apps in the background, until there are enough.
+     */
+    public void refill()
+    {
+        int current;
+        
+        while (running && (current = size.get()) < minIdle)
+        {
+            if (!size.compareAndSet(current, current + 1)) { continue; }
+            
+            try
+            {
+                refiller.execute(new PrepareTask());
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // shut down meanwhile
+                size.decrementAndGet();
+                return;
+            }
+        }
+    }
+    
+    
+    /**
+     * Prepares a single game app and puts it into the pool.
+     */
+    private class PrepareTask implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            Handle<GameAppContext> gameApp = null;
+            
+            try
+            {
+                gameApp = running ? prepare() : null;
+            }
+            catch (RuntimeException ex)
+            {
+                LOGGER.error("Failed to prepare a game app! [name {} ]", name, ex);
+            }
+            
+            if (gameApp == null)
+            {
+                // dont retry right away, the next poll will
+                size.decrementAndGet();
+                return;
+            }
+            
+            idle.add(gameApp);
+            
+            // the pool might have been shut down meanwhile
+            if (!running) { drain(); }
+        }
+    }
+    
+    
+    /**
+     * Stop refilling, and unload all idle game apps.
+     */
+    public void shutdown()
+    {
+        running = false;
+        refiller.shutdown();
+        drain();
+    }
+    
+    
+    /**
+     * Unload all idle game apps.
+     */
+    private void drain()
+    {
+        Handle<GameAppContext> gameApp;
+        
+        while ((gameApp = idle.poll()) != null)
+        {
+            size.decrementAndGet();
+            destroy(gameApp);
+        }
+    }
+}
@@ -4,17 +4,32 @@
 
 package realityshard.container;
 
-import java.util.HashSet;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
 import realityshard.container.events.GameAppCreatedEvent;
 import realityshard.container.events.GameAppUnloadedEvent;
 import realityshard.container.events.NetworkClientConnectedEvent;
+import realityshard.container.events.RoutableEvent;
 import realityshard.container.gameapp.GameAppContext;
 import realityshard.container.gameapp.GameAppManager;
+import realityshard.container.network.GameAppContextKey;
 import realityshard.container.network.Message;
+import realityshard.container.util.SnapshotSet;
 
 
 /**
@@ -23,7 +38,23 @@ import realityshard.container.network.Message;
  * If we got messages from a new client, this context will distribute them
  * to the other contexts.
  * 
+ * To avoid that broadcast, an instance can claim a channel (its messages will
+ * then go to that instance directly), or register a routing key with this context,
+ * like a session token. Events that carry that key (see RoutableEvent) are
+ * then only sent to that instance, which is a single hash lookup.
+ * 
+ * Other events are sent to all instances. With interest filtering enabled
+ * (see GameAppSettings.setInterestFiltering), they are only sent to the instances
+ * that have handlers for them. These are looked up once per event class, and 
+ * cached until an instance is added or removed, or changes its handlers for
+ * that event class. This is worth it if there are many instances that handle
+ * different events, but costs a lookup per event class otherwise.
+ * 
  * Note that we only want different game app context instances.
+ * 
+ * Instances are added and removed by the threads that create and unload them,
+ * while the network threads distribute messages to them. The instances are thus
+ * kept in a concurrent set that is iterated without locks, using snapshots.
  *
  * @author _rusty
  */
@@ -32,29 +63,82 @@ public class MetaGameAppContext extends GameAppContext.Default
 
     private final static Logger LOGGER = LoggerFactory.getLogger(MetaGameAppContext.class);
 
-    private Set<GameAppContext> contexts;
+    private final SnapshotSet<GameAppContext> contexts = new SnapshotSet<>();
+    
+    // routing key to the instance that handles its events
+    private final ConcurrentMap<Object, GameAppContext> routes = new ConcurrentHashMap<>();
+    
+    // instance to its routing keys, so we can drop them when it is shut down
+    private final ConcurrentMap<GameAppContext, Set<Object>> routingKeys = new ConcurrentHashMap<>();
+    
+    // the instances that were removed (until they are added again, e.g. by their pool).
+    // instances that were not added yet may add routes already (e.g. while they are initialized)
+    private final Set<GameAppContext> removed = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<GameAppContext, Boolean>()));
+    
+    // concrete event class to the instances that handle it (only with interest filtering).
+    // entries are dropped whenever the instances or their handlers change, and
+    // the generation tells a distributing thread whether that happened meanwhile
+    private final boolean interestFiltering;
+    private final ConcurrentMap<Class<?>, GameAppContext[]> interests = new ConcurrentHashMap<>();
+    private final AtomicLong interestGeneration = new AtomicLong();
+    
+    private final EventAggregator.RegistrationListener interestInvalidator = new EventAggregator.RegistrationListener()
+    {
+        @Override
+        public void registrationsChanged(EventAggregator aggregator, Set<Class<? extends Event>> eventClasses)
+        {
+            invalidateInterests(eventClasses);
+        }
+    };
 
 
     /**
      * Constructor.
+     * (Events are sent to all instances)
      */
     public MetaGameAppContext(String name, GameAppManager manager)
     {
-        super(name, manager, null);        
-        contexts = new HashSet<>();
+        this(name, manager, false);
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       name                    The name of the game apps.
+     * @param       manager                 The container.
+     * @param       interestFiltering       True if events should only be sent to the 
+     *                                      instances that have handlers for them.
+     */
+    public MetaGameAppContext(String name, GameAppManager manager, boolean interestFiltering)
+    {
+        super(name, manager, null);
+        
+        this.interestFiltering = interestFiltering;
     }
     
     
     /**
      * Handles the messages from all unconnected clients,
      * and distributes it to all sub-contexts
+     * (or only to the one that registered its routing key)
      * 
      * @param message 
      */
     @Override
     public void handleMessage(Message message)
     {
-        for (GameAppContext context : contexts) 
+        GameAppContext route = routeOf(message);
+        
+        if (route != null)
+        {
+            // messages from this channel will go there directly from now on
+            claimChannel(message.getChannel(), route);
+            route.handleMessage(message);
+            return;
+        }
+        
+        for (GameAppContext context : interestedIn(message.getClass())) 
         {
             context.handleMessage(message);
         }
@@ -64,17 +148,135 @@ public class MetaGameAppContext extends GameAppContext.Default
     /**
      * Handles the event from all unconnected clients,
      * and distributes it to all sub-contexts
+     * (or only to the one that registered its routing key)
      * 
      * @param event 
      */
     @Override
     public void trigger(Event event)
     {
-        for (GameAppContext context : contexts) 
+        GameAppContext route = routeOf(event);
+        
+        if (route != null)
+        {
+            route.trigger(event);
+            return;
+        }
+        
+        for (GameAppContext context : interestedIn(event.getClass())) 
         {
             context.trigger(event);
         }
     }
+    
+    
+    /**
+     * Assign a channel to an instance. Its messages will not pass this
+     * context anymore, but go to the instance directly.
+     * (If the instance has a home event loop, the channel is moved to that loop)
+     * 
+     * @param       channel                 The channel of the client.
+     * @param       context                 The instance that takes the channel.
+     */
+    public void claimChannel(Channel channel, GameAppContext context)
+    {
+        if (channel == null) { return; }
+        
+        GameAppContext previous = channel.attr(GameAppContextKey.KEY).getAndSet(context);
+        channel.attr(GameAppContextKey.IS_SET).set(true);
+        
+        // keep the channel on the same thread as its game app
+        if (previous != context && context instanceof GameAppContext.Default)
+        {
+            moveToEventLoop(channel, ((GameAppContext.Default) context).getEventLoop());
+        }
+    }
+    
+    
+    /**
+     * Re-register a channel with another event loop of its group.
+     * The socket stays open, and whatever the client sends meanwhile
+     * is read as soon as the channel is registered again.
+     */
+    private static void moveToEventLoop(final Channel channel, final EventLoop eventLoop)
+    {
+        // failchecks
+        if (eventLoop == null || channel.eventLoop() == eventLoop) { return; }
+        
+        channel.deregister().addListener(new ChannelFutureListener()
+        {
+            @Override
+            public void operationComplete(ChannelFuture future)
+            {
+                if (!future.isSuccess())
+                {
+                    // its still registered with the old loop, which works as well
+                    LOGGER.warn("Could not move a channel to its event loop. [channel {} ]", channel, future.cause());
+                    return;
+                }
+                
+                eventLoop.register(channel).addListener(new ChannelFutureListener()
+                {
+                    @Override
+                    public void operationComplete(ChannelFuture future)
+                    {
+                        if (!future.isSuccess())
+                        {
+                            LOGGER.error("Could not register a channel with its event loop. [channel {} ]", channel, future.cause());
+                            channel.unsafe().closeForcibly();
+                        }
+                    }
+                });
+            }
+        });
+    }
+    
+    
+    /**
+     * Send all events with a certain routing key to an instance only.
+     * (If the event is a message, its channel will be claimed by that instance too)
+     * 
+     * The route stays until it is removed, or the instance is shut down.
+     * Instances may add their routes while they are initialized, before the
+     * container adds them to this context.
+     * 
+     * @param       key                     The routing key, like a session token or map id.
+     * @param       context                 The instance that handles these events.
+     */
+    public void addRoute(Object key, GameAppContext context)
+    {
+        GameAppContext previous = routes.put(key, context);
+        
+        if (previous != null && previous != context)
+        {
+            keysOf(previous).remove(key);
+        }
+        
+        keysOf(context).add(key);
+        
+        // the instance might have been removed concurrently, after its routes were
+        // dropped but before we added this one. then nobody else would drop it
+        if (removed.contains(context))
+        {
+            removeRoutesOf(context);
+        }
+    }
+    
+    
+    /**
+     * Remove a route, the events of that key will be sent to all instances again.
+     * 
+     * @param       key                     The routing key.
+     */
+    public void removeRoute(Object key)
+    {
+        GameAppContext context = routes.remove(key);
+        
+        if (context != null)
+        {
+            keysOf(context).remove(key);
+        }
+    }
 
 
     /**
@@ -89,7 +291,12 @@ public class MetaGameAppContext extends GameAppContext.Default
     public void addContext(GameAppContext context)
     {
         context.trigger(new GameAppCreatedEvent());
+        
+        if (interestFiltering) { context.getEventAggregator().addRegistrationListener(interestInvalidator); }
+        
+        removed.remove(context);
         contexts.add(context);
+        invalidateInterests(null);
     }
 
 
@@ -100,10 +307,18 @@ public class MetaGameAppContext extends GameAppContext.Default
     {
         for (GameAppContext context : contexts)
         {
+            // whoever removes it first shuts it down
+            if (!contexts.remove(context)) { continue; }
+            
+            removed.add(context);
+            context.getEventAggregator().removeRegistrationListener(interestInvalidator);
             context.trigger(new GameAppUnloadedEvent());
+            context.getEventAggregator().shutdown();
         }
         
-        contexts.clear();
+        routes.clear();
+        routingKeys.clear();
+        invalidateInterests(null);
     }
     
     
@@ -115,10 +330,174 @@ public class MetaGameAppContext extends GameAppContext.Default
      */
     public void shutdown(GameAppContext context)
     {
-        if (contexts.contains(context))
+        if (removeContext(context))
         {
             context.trigger(new GameAppUnloadedEvent());
-            contexts.remove(context);
+            context.getEventAggregator().shutdown();
+        }
+    }
+    
+    
+    /**
+     * Check if a game app is managed by this context.
+     * 
+     * @param       context                 The game app.
+     * @return      True if it is, false if it is not (e.g. because it is idle in a pool)
+     */
+    public boolean contains(GameAppContext context)
+    {
+        return contexts.contains(context);
+    }
+    
+    
+    /**
+     * Remove a game app from this context without unloading it
+     * (e.g. to put it back into the pool of its factory). It wont get 
+     * any events of this context anymore, and its routes are dropped.
+     * 
+     * @param       context                 The game app.
+     * @return      True if it was managed by this, false if it was not
+     *              (or has already been removed by another thread)
+     */
+    public boolean removeContext(GameAppContext context)
+    {
+        // this is atomic, so concurrent calls dont remove it twice
+        if (!contexts.remove(context)) { return false; }
+        
+        // before its routes are dropped, see addRoute
+        removed.add(context);
+        
+        context.getEventAggregator().removeRegistrationListener(interestInvalidator);
+        invalidateInterests(null);
+        removeRoutesOf(context);
+        
+        return true;
+    }
+    
+    
+    /**
+     * Get the instance that registered the routing key of an event.
+     * 
+     * @return      The instance, or null if the event should be broadcast.
+     */
+    private GameAppContext routeOf(Event event)
+    {
+        // failchecks first
+        if (routes.isEmpty() || !(event instanceof RoutableEvent)) { return null; }
+        
+        Object key = ((RoutableEvent) event).getRoutingKey();
+        
+        return (key == null) ? null : routes.get(key);
+    }
+    
+    
+    /**
+     * Get the instances that have handlers for an event class
+     * (or all instances, if interest filtering is disabled).
+     */
+    private Iterable<GameAppContext> interestedIn(Class<? extends Event> eventClass)
+    {
+        if (!interestFiltering) { return contexts; }
+        
+        GameAppContext[] result = interests.get(eventClass);
+        
+        if (result != null) { return Arrays.asList(result); }
+        
+        // read the generation before the instances, see invalidateInterests
+        long generation = interestGeneration.get();
+        List<GameAppContext> interested = new ArrayList<>();
+        
+        for (GameAppContext context : contexts)
+        {
+            if (context.getEventAggregator().hasHandlers(eventClass))
+            {
+                interested.add(context);
+            }
+        }
+        
+        result = interested.toArray(new GameAppContext[interested.size()]);
+        interests.put(eventClass, result);
+        
+        // the instances changed meanwhile, so dont keep what might be outdated
+        if (interestGeneration.get() != generation)
+        {
+            interests.remove(eventClass, result);
+        }
+        
+        return interested;
+    }
+    
+    
+    /**
+     * Drop the cached interests.
+     * 
+     * This must be called after the instances or their handlers changed. The generation
+     * is increased before the entries are dropped, so a distributing thread that looked at
+     * the outdated instances either put its entry before it is dropped here, or
+     * notices the new generation and drops its entry itself.
+     * 
+     * @param       eventClasses            The event classes whose handlers changed, 
+     *                                      or null if the instances changed.
+     */
+    private void invalidateInterests(Set<Class<? extends Event>> eventClasses)
+    {
+        if (!interestFiltering) { return; }
+        
+        interestGeneration.incrementAndGet();
+        
+        if (eventClasses == null)
+        {
+            interests.clear();
+            return;
+        }
+        
+        // the cache is keyed by concrete classes, so drop the subclasses too
+        for (Class<?> cached : interests.keySet())
+        {
+            for (Class<? extends Event> eventClass : eventClasses)
+            {
+                if (eventClass.isAssignableFrom(cached))
+                {
+                    interests.remove(cached);
+                    break;
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Get the routing keys of an instance.
+     */
+    private Set<Object> keysOf(GameAppContext context)
+    {
+        Set<Object> keys = routingKeys.get(context);
+        
+        if (keys == null)
+        {
+            keys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+            Set<Object> existing = routingKeys.putIfAbsent(context, keys);
+            
+            if (existing != null) { keys = existing; }
+        }
+        
+        return keys;
+    }
+    
+    
+    /**
+     * Drop all routes of an instance.
+     */
+    private void removeRoutesOf(GameAppContext context)
+    {
+        Set<Object> keys = routingKeys.remove(context);
+        
+        if (keys == null) { return; }
+        
+        for (Object key : keys)
+        {
+            // only if it was not taken over by another instance meanwhile
+            routes.remove(key, context);
         }
     }
 }
@@ -0,0 +1,1128 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.cluster;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import realityshard.container.ContainerFacade;
+import realityshard.container.ExecutorStrategy;
+import realityshard.container.GlobalExecutor;
+import realityshard.container.events.Event;
+import realityshard.container.gameapp.GameAppContext;
+import realityshard.container.network.MonitoredEventLoopGroup;
+import realityshard.container.network.Transport;
+import realityshard.container.util.Handle;
+
+
+/**
+ * Connects a container with the containers of other processes (or machines),
+ * so they act as one cluster:
+ * 
+ * - All nodes share a directory of their game apps, so tryGetGameApp finds
+ *   game apps on any node.
+ * - createGameApp places a new game app on the node with the least game apps
+ *   (of all nodes that have a factory for it).
+ * - Game apps on other nodes are represented by RemoteGameAppContexts, and events
+ *   triggered on them are forwarded to their node over a binary channel.
+ * 
+ * Each node listens on its own cluster port, and connects to the seed nodes
+ * (it is enough if one of two nodes knows the other one).
+ * Several nodes can run on the same machine, if their ports differ.
+ * 
+ * The nodes do not authenticate each other, so the cluster port must be bound
+ * to an interface of the internal network (not the wildcard address), and
+ * should only accept the hosts of the other nodes (see addTrustedHost).
+ * The forwarded events need a codec that all nodes agree on (see setEventCodec)
+ * 
+ * Usage:
+ * 
+ * ClusterNode node = new ClusterNode(container, new InetSocketAddress("10.0.0.1", 9100))
+ *         .addSeed(new InetSocketAddress("10.0.0.2", 9100))
+ *         .addTrustedHost(InetAddress.getByName("10.0.0.3"))
+ *         .setEventCodec(new EventCodec.Serialization(ChatMessage.class, Teleport.class))
+ *         .start();
+ * 
+ * @author _rusty
+ */
+public class ClusterNode
+{
+    
+    /**
+     * Storage class for another node that we are connected to.
+     */
+    public static final class Peer
+    {
+        public UUID NodeUid;
+        public InetSocketAddress ClusterAddress;
+        public Set<String> Factories;
+        // the amount of game apps, as published by the node (plus our creations since then)
+        public final AtomicInteger Load = new AtomicInteger();
+        public Channel Channel;
+    }
+    
+    
+    /**
+     * Storage class for a createGameApp call that waits for the other node.
+     */
+    private static final class PendingCreation
+    {
+        public UUID NodeUid;
+        public String Name;
+        public Promise<RemoteGameAppContext> Result;
+    }
+    
+    
+    /**
+     * Reads the frames of one inter-node channel.
+     */
+    private final class PeerHandler extends SimpleChannelInboundHandler<ByteBuf>
+    {
+        
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception
+        {
+            if (!isTrusted(ctx.channel()))
+            {
+                LOGGER.warn("Refused a cluster channel of an unknown host. [channel {} ]", ctx.channel());
+                ctx.close();
+                return;
+            }
+            
+            channels.add(ctx.channel());
+            ctx.writeAndFlush(produceHello(ctx.channel()));
+            super.channelActive(ctx);
+        }
+        
+        
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception
+        {
+            handleFrame(ctx.channel(), frame);
+        }
+        
+        
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception
+        {
+            handleDisconnect(ctx.channel());
+            super.channelInactive(ctx);
+        }
+        
+        
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+        {
+            LOGGER.warn("Closing a cluster channel. [channel {} ]", ctx.channel(), cause);
+            ctx.close();
+        }
+    }
+    
+    
+    private final static Logger LOGGER = LoggerFactory.getLogger(ClusterNode.class);
+    
+    // set on the channels that this node connected to (and not the other way round)
+    private final static AttributeKey<Boolean> OUTBOUND = AttributeKey.valueOf(ClusterNode.class.getName() + "_outbound");
+    private final static AttributeKey<Peer> PEER = AttributeKey.valueOf(ClusterNode.class.getName() + "_peer");
+    
+    private final UUID nodeUid = UUID.randomUUID();
+    private final ContainerFacade container;
+    private final InetSocketAddress bindAddress;
+    
+    private final List<InetSocketAddress> seeds = new CopyOnWriteArrayList<>();
+    private final Map<InetSocketAddress, Channel> seedChannels = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Peer> peers = new ConcurrentHashMap<>();
+    private final Set<Channel> channels = Collections.newSetFromMap(new ConcurrentHashMap<Channel, Boolean>());
+    private final Set<InetAddress> trustedHosts = new CopyOnWriteArraySet<>();
+    
+    // the game apps of the other nodes
+    private final ConcurrentMap<UUID, RemoteGameAppContext> directory = new ConcurrentHashMap<>();
+    
+    private final ConcurrentMap<Long, PendingCreation> pendingCreations = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+    
+    private EventCodec eventCodec;
+    private long requestTimeoutMillis = 5000;
+    private long heartbeatMillis = 1000;
+    private int threads = 2;
+    
+    private EventLoopGroup group;
+    private Bootstrap bootstrap;
+    private Channel serverChannel;
+    private ScheduledFuture<?> heartbeat;
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       container               The local container.
+     * @param       bindAddress             The address that the other nodes connect to.
+     *                                      (Port 0 picks a free port, see getLocalAddress)
+     */
+    public ClusterNode(ContainerFacade container, InetSocketAddress bindAddress)
+    {
+        if (bindAddress == null || bindAddress.isUnresolved()) { throw new IllegalArgumentException("The bind address must be a resolved address."); }
+        if (bindAddress.getAddress().isAnyLocalAddress()) { throw new IllegalArgumentException("The cluster port must be bound to a specific interface, not the wildcard address."); }
+        
+        this.container = container;
+        this.bindAddress = bindAddress;
+    }
+    
+    
+    /**
+     * Setter.
+     * Add a node that this node connects to (and reconnects to, if the connection is lost).
+     * 
+     * @param       seed                    The cluster address of the other node.
+     * @return      This node.
+     */
+    public ClusterNode addSeed(InetSocketAddress seed)
+    {
+        if (seed == null) { throw new IllegalArgumentException("The seed address must not be null."); }
+        
+        seeds.add(seed);
+        return this;
+    }
+    
+    
+    /**
+     * Setter.
+     * Only accept inbound channels from this host (and from the hosts of the seeds).
+     * If no host is added, any host that can reach the cluster port may join.
+     * 
+     * @param       host                    The address of another node.
+     * @return      This node.
+     */
+    public ClusterNode addTrustedHost(InetAddress host)
+    {
+        if (host == null) { throw new IllegalArgumentException("The trusted host must not be null."); }
+        
+        trustedHosts.add(host);
+        return this;
+    }
+    
+    
+    /**
+     * Setter.
+     * (Call this before the node is started, there is no default)
+     * 
+     * @param       eventCodec              Encodes the forwarded events.
+     * @return      This node.
+     */
+    public ClusterNode setEventCodec(EventCodec eventCodec)
+    {
+        if (eventCodec == null) { throw new IllegalArgumentException("The event codec must not be null."); }
+        
+        this.eventCodec = eventCodec;
+        return this;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * @param       requestTimeoutMillis    How long createGameApp waits for another node.
+     * @return      This node.
+     */
+    public ClusterNode setRequestTimeoutMillis(long requestTimeoutMillis)
+    {
+        if (requestTimeoutMillis <= 0) { throw new IllegalArgumentException("The request timeout must be positive."); }
+        
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        return this;
+    }
+    
+    
+    /**
+     * Setter.
+     * (Call this before the node is started)
+     * 
+     * @param       heartbeatMillis         The time between two load updates (and reconnects)
+     * @return      This node.
+     */
+    public ClusterNode setHeartbeatMillis(long heartbeatMillis)
+    {
+        if (heartbeatMillis <= 0) { throw new IllegalArgumentException("The heartbeat interval must be positive."); }
+        
+        this.heartbeatMillis = heartbeatMillis;
+        return this;
+    }
+    
+    
+    /**
+     * Setter.
+     * (Call this before the node is started)
+     * 
+     * @param       threads                 The amount of network threads for the
+     *                                      inter-node channels, or 0 for netty's default.
+     * @return      This node.
+     */
+    public ClusterNode setThreads(int threads)
+    {
+        if (threads < 0) { throw new IllegalArgumentException("The thread count must not be negative."); }
+        
+        this.threads = threads;
+        return this;
+    }
+    
+    
+    /**
+     * Bind the cluster port, connect to the seeds, and let the container
+     * use this node from now on.
+     * 
+     * @return      This node.
+     * @throws      IllegalStateException   If there is no event codec.
+     * @throws      Exception               If the port cannot be bound.
+     */
+    public synchronized ClusterNode start() throws Exception
+    {
+        if (eventCodec == null) { throw new IllegalStateException("The cluster node needs an event codec."); }
+        
+        Transport transport = container.getEventLoopTopology().getTransport();
+        group = transport.newGroup(threads, new ExecutorStrategy.DaemonThreadFactory("cluster"));
+        
+        ChannelInitializer<Channel> initializer = new ChannelInitializer<Channel>()
+        {
+            @Override
+            protected void initChannel(Channel channel)
+            {
+                channel.pipeline().addLast(
+                        new LengthFieldBasedFrameDecoder(ClusterProtocol.MAX_FRAME_LENGTH, 0, 4, 0, 4),
+                        new LengthFieldPrepender(4),
+                        new PeerHandler());
+            }
+        };
+        
+        try
+        {
+            serverChannel = new ServerBootstrap()
+                    .group(group)
+                    .channel(transport.getServerChannelClass())
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(initializer)
+                    .bind(bindAddress).sync().channel();
+        }
+        catch (Exception ex)
+        {
+            group.shutdownGracefully();
+            throw ex;
+        }
+        
+        bootstrap = new Bootstrap()
+                .group(group)
+                .channel(transport.getChannelClass())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .attr(OUTBOUND, true)
+                .handler(initializer);
+        
+        container.setClusterNode(this);
+        
+        heartbeat = GlobalExecutor.get().scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                heartbeat();
+            }
+        }, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+        
+        LOGGER.info("Cluster node started. [node {} address {} ]", nodeUid, serverChannel.localAddress());
+        return this;
+    }
+    
+    
+    /**
+     * Leave the cluster. The local game apps keep running, and the game apps of
+     * the other nodes cannot be reached anymore.
+     */
+    public synchronized void shutdown()
+    {
+        if (group == null) { return; }
+        
+        container.setClusterNode(null);
+        heartbeat.cancel(false);
+        
+        serverChannel.close().syncUninterruptibly();
+        
+        for (Channel channel : channels)
+        {
+            channel.close().syncUninterruptibly();
+        }
+        
+        group.shutdownGracefully();
+        group = null;
+        
+        for (PendingCreation pendingCreation : pendingCreations.values())
+        {
+            pendingCreation.Result.trySuccess(null);
+        }
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The local container.
+     */
+    public ContainerFacade getContainer()
+    {
+        return container;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The unique identifier of this node.
+     */
+    public UUID getNodeUid()
+    {
+        return nodeUid;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The address of the cluster port (e.g. if it was bound to port 0)
+     */
+    public InetSocketAddress getLocalAddress()
+    {
+        return (InetSocketAddress) serverChannel.localAddress();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The other nodes that this node is currently connected to.
+     */
+    public Collection<Peer> getPeers()
+    {
+        return Collections.unmodifiableCollection(peers.values());
+    }
+    
+    
+    /**
+     * Check if another node has a factory for a game app.
+     * 
+     * @param       name                    The name of the game app.
+     * @return      True if the game app can be created remotely.
+     */
+    public boolean canCreateRemoteGameApp(String name)
+    {
+        for (Peer peer : peers.values())
+        {
+            if (peer.Factories.contains(name)) { return true; }
+        }
+        
+        return false;
+    }
+    
+    
+    /**
+     * Determine the node that should run a new game app.
+     * 
+     * Network threads (e.g. the home event loops of the game apps, or the
+     * threads of this node) always create game apps locally: Waiting there for
+     * the other node would stall the loop, or even the reply we are waiting for.
+     * 
+     * @param       name                    The name of the game app.
+     * @return      The node with the least game apps, or null if the game app
+     *              should be created locally.
+     */
+    public Peer placementFor(String name)
+    {
+        if (isNetworkThread())
+        {
+            LOGGER.debug("Creating a game app locally, the network thread cannot wait for other nodes. [name {} ]", name);
+            return null;
+        }
+        
+        Peer result = null;
+        int resultLoad = container.canCreateLocalGameApp(name) ? localLoad() : Integer.MAX_VALUE;
+        
+        for (Peer peer : peers.values())
+        {
+            int load = peer.Load.get();
+            
+            if (peer.Factories.contains(name) && load < resultLoad && peer.Channel.isActive())
+            {
+                result = peer;
+                resultLoad = load;
+            }
+        }
+        
+        return result;
+    }
+    
+    
+    /**
+     * Create a game app on another node.
+     * This blocks until the other node created it, so it must not be called
+     * from a network thread (see placementFor)
+     * 
+     * @param       peer                    The node (see placementFor)
+     * @param       name                    The name of the game app.
+     * @param       parent                  The parent game app (null if there is none)
+     * @param       additionalParams        Any additionaly init params.
+     * @return      The handle of the remote game app, or null if the creation failed.
+     */
+    public Handle<GameAppContext> createRemoteGameApp(Peer peer, String name, Handle<GameAppContext> parent, Map<String, String> additionalParams)
+    {
+        if (isNetworkThread()) { throw new IllegalStateException("Cannot wait for another node on a network thread."); }
+        
+        long requestId = requestIds.incrementAndGet();
+        
+        PendingCreation pendingCreation = new PendingCreation();
+        pendingCreation.NodeUid = peer.NodeUid;
+        pendingCreation.Name = name;
+        pendingCreation.Result = GlobalEventExecutor.INSTANCE.newPromise();
+        
+        pendingCreations.put(requestId, pendingCreation);
+        
+        // until the next heartbeat, so that a burst of creations is spread over the nodes
+        peer.Load.incrementAndGet();
+        
+        ByteBuf frame = peer.Channel.alloc().buffer();
+        frame.writeByte(ClusterProtocol.CREATE);
+        frame.writeLong(requestId);
+        ClusterProtocol.writeString(frame, name);
+        frame.writeBoolean(parent != null);
+        
+        if (parent != null) { ClusterProtocol.writeUid(frame, parent.getUid()); }
+        
+        Map<String, String> params = (additionalParams == null) ? Collections.<String, String>emptyMap() : additionalParams;
+        frame.writeInt(params.size());
+        
+        for (Map.Entry<String, String> param : params.entrySet())
+        {
+            ClusterProtocol.writeString(frame, param.getKey());
+            ClusterProtocol.writeString(frame, param.getValue());
+        }
+        
+        peer.Channel.writeAndFlush(frame);
+        
+        if (!pendingCreation.Result.awaitUninterruptibly(requestTimeoutMillis))
+        {
+            pendingCreations.remove(requestId);
+            LOGGER.error("Creating a remote game app timed out. [name {} node {} ]", name, peer.NodeUid);
+            return null;
+        }
+        
+        RemoteGameAppContext result = pendingCreation.Result.getNow();
+        
+        if (result == null)
+        {
+            LOGGER.error("Failed to create remote game app! [name {} node {} ]", name, peer.NodeUid);
+            return null;
+        }
+        
+        return result.getHandle();
+    }
+    
+    
+    /**
+     * Try get a game app of another node.
+     * 
+     * @param       gameAppUid              The uid of the game app.
+     * @return      The handle of the remote game app, or null.
+     */
+    public Handle<GameAppContext> tryGetRemoteGameApp(UUID gameAppUid)
+    {
+        RemoteGameAppContext context = directory.get(gameAppUid);
+        
+        return (context == null) ? null : context.getHandle();
+    }
+    
+    
+    /**
+     * Ask the node of a remote game app to remove it.
+     * 
+     * @param       context                 The remote game app.
+     */
+    public void removeRemoteGameApp(RemoteGameAppContext context)
+    {
+        Peer peer = peers.get(context.getNodeUid());
+        
+        if (peer == null) { LOGGER.warn("The node of a game app is not connected. [name {} node {} ]", context.getName(), context.getNodeUid()); return; }
+        
+        ByteBuf frame = peer.Channel.alloc().buffer();
+        frame.writeByte(ClusterProtocol.REMOVE);
+        ClusterProtocol.writeUid(frame, context.getHandle().getUid());
+        
+        peer.Channel.writeAndFlush(frame);
+    }
+    
+    
+    /**
+     * Tell the other nodes about a new local game app.
+     * (Called by the container)
+     * 
+     * @param       that                    The game app.
+     */
+    public void gameAppCreated(Handle<GameAppContext> that)
+    {
+        broadcast(producePlaced(that));
+    }
+    
+    
+    /**
+     * Tell the other nodes that a local game app is gone.
+     * (Called by the container)
+     * 
+     * @param       that                    The game app.
+     */
+    public void gameAppRemoved(Handle<GameAppContext> that)
+    {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeByte(ClusterProtocol.REMOVED);
+        ClusterProtocol.writeUid(frame, that.getUid());
+        
+        broadcast(frame);
+    }
+    
+    
+    /**
+     * Send an event to the node of a remote game app.
+     */
+    void forward(RemoteGameAppContext context, Event event)
+    {
+        Peer peer = peers.get(context.getNodeUid());
+        
+        if (peer == null) { LOGGER.warn("Cannot forward an event, the node is not connected. [name {} node {} ]", context.getName(), context.getNodeUid()); return; }
+        
+        ByteBuf frame = peer.Channel.alloc().buffer();
+        frame.writeByte(ClusterProtocol.EVENT);
+        ClusterProtocol.writeUid(frame, context.getHandle().getUid());
+        
+        try
+        {
+            eventCodec.encode(event, frame);
+        }
+        catch (Exception ex)
+        {
+            frame.release();
+            LOGGER.warn("Cannot forward an event. [event {} ]", event.getClass().getName(), ex);
+            return;
+        }
+        
+        peer.Channel.writeAndFlush(frame);
+    }
+    
+    
+    /**
+     * Publish our load, and reconnect to seeds that we lost.
+     */
+    private void heartbeat()
+    {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeByte(ClusterProtocol.LOAD);
+        frame.writeInt(localLoad());
+        
+        broadcast(frame);
+        
+        for (InetSocketAddress seed : seeds)
+        {
+            if (isConnectedTo(seed)) { continue; }
+            
+            // still connecting?
+            Channel channel = seedChannels.get(seed);
+            if (channel != null && channel.isOpen() && channel.attr(PEER).get() == null) { continue; }
+            
+            connect(seed);
+        }
+    }
+    
+    
+    /**
+     * Connect to a seed node.
+     */
+    private void connect(final InetSocketAddress seed)
+    {
+        ChannelFuture future = bootstrap.connect(seed);
+        seedChannels.put(seed, future.channel());
+        
+        future.addListener(new ChannelFutureListener()
+        {
+            @Override
+            public void operationComplete(ChannelFuture future)
+            {
+                if (!future.isSuccess())
+                {
+                    LOGGER.debug("Could not connect to a seed, retrying later. [seed {} ]", seed);
+                }
+            }
+        });
+    }
+    
+    
+    /**
+     * Check if the current thread is one of the event loops of this node or the container.
+     */
+    private boolean isNetworkThread()
+    {
+        EventLoopGroup clusterGroup = group;
+        
+        if (clusterGroup != null && isEventLoopOf(clusterGroup)) { return true; }
+        
+        for (MonitoredEventLoopGroup containerGroup : container.getEventLoopTopology().getGroups())
+        {
+            if (isEventLoopOf(containerGroup.getGroup())) { return true; }
+        }
+        
+        return false;
+    }
+    
+    
+    private static boolean isEventLoopOf(EventLoopGroup loops)
+    {
+        for (EventExecutor loop : loops)
+        {
+            if (loop.inEventLoop()) { return true; }
+        }
+        
+        return false;
+    }
+    
+    
+    /**
+     * Check if the other end of a channel may join the cluster.
+     */
+    private boolean isTrusted(Channel channel)
+    {
+        if (trustedHosts.isEmpty()) { return true; }
+        
+        InetAddress host = ((InetSocketAddress) channel.remoteAddress()).getAddress();
+        
+        if (trustedHosts.contains(host)) { return true; }
+        
+        for (InetSocketAddress seed : seeds)
+        {
+            if (host.equals(seed.getAddress())) { return true; }
+        }
+        
+        return false;
+    }
+    
+    
+    /**
+     * Check if we got a node with that cluster address.
+     */
+    private boolean isConnectedTo(InetSocketAddress clusterAddress)
+    {
+        for (Peer peer : peers.values())
+        {
+            if (peer.ClusterAddress.equals(clusterAddress) && peer.Channel.isActive()) { return true; }
+        }
+        
+        return false;
+    }
+    
+    
+    /**
+     * Handle an incoming frame.
+     */
+    private void handleFrame(Channel channel, ByteBuf frame)
+    {
+        byte opcode = frame.readByte();
+        
+        if (opcode == ClusterProtocol.HELLO)
+        {
+            handleHello(channel, frame);
+            return;
+        }
+        
+        Peer peer = channel.attr(PEER).get();
+        
+        if (peer == null) { LOGGER.warn("Got a frame before the handshake. [channel {} ]", channel); channel.close(); return; }
+        
+        switch (opcode)
+        {
+            case ClusterProtocol.LOAD:
+                peer.Load.set(frame.readInt());
+                break;
+            
+            case ClusterProtocol.PLACED:
+                UUID uid = ClusterProtocol.readUid(frame);
+                String name = ClusterProtocol.readString(frame);
+                InetSocketAddress address = ClusterProtocol.readAddress(frame);
+                
+                directory.put(uid, new RemoteGameAppContext(this, uid, peer.NodeUid, name, address));
+                break;
+            
+            case ClusterProtocol.REMOVED:
+                directory.remove(ClusterProtocol.readUid(frame));
+                break;
+            
+            case ClusterProtocol.CREATE:
+                handleCreate(channel, peer, frame);
+                break;
+            
+            case ClusterProtocol.CREATED:
+                handleCreated(frame);
+                break;
+            
+            case ClusterProtocol.EVENT:
+                handleEvent(frame);
+                break;
+            
+            case ClusterProtocol.REMOVE:
+                handleRemove(frame);
+                break;
+            
+            default:
+                LOGGER.warn("Got an unknown frame. [opcode {} node {} ]", opcode, peer.NodeUid);
+        }
+    }
+    
+    
+    /**
+     * Another node introduced itself.
+     */
+    private void handleHello(Channel channel, ByteBuf frame)
+    {
+        Peer peer = new Peer();
+        peer.NodeUid = ClusterProtocol.readUid(frame);
+        peer.ClusterAddress = new InetSocketAddress(((InetSocketAddress) channel.remoteAddress()).getAddress(), frame.readUnsignedShort());
+        peer.Load.set(frame.readInt());
+        peer.Factories = new HashSet<>();
+        peer.Channel = channel;
+        
+        for (int i = frame.readInt(); i > 0; i--)
+        {
+            peer.Factories.add(ClusterProtocol.readString(frame));
+        }
+        
+        // we might be one of our own seeds
+        if (peer.NodeUid.equals(nodeUid)) { channel.close(); return; }
+        
+        Peer existing = peers.putIfAbsent(peer.NodeUid, peer);
+        
+        if (existing != null)
+        {
+            // both nodes connected to each other, both keep the same channel
+            if (existing.Channel.isActive() && keepsExisting(existing.Channel, channel, peer.NodeUid))
+            {
+                channel.close();
+                return;
+            }
+            
+            peers.put(peer.NodeUid, peer);
+            existing.Channel.close();
+        }
+        
+        channel.attr(PEER).set(peer);
+        
+        // tell the new node about our game apps
+        for (Handle<GameAppContext> gameApp : container.getGameApps())
+        {
+            channel.write(producePlaced(gameApp));
+        }
+        
+        channel.flush();
+        
+        LOGGER.info("Node joined the cluster. [node {} address {} ]", peer.NodeUid, peer.ClusterAddress);
+    }
+    
+    
+    /**
+     * Decide which of two channels to the same node is kept: The one that
+     * was opened by the node with the lower uid.
+     */
+    private boolean keepsExisting(Channel existing, Channel incoming, UUID peerUid)
+    {
+        UUID preferred = (nodeUid.compareTo(peerUid) < 0) ? nodeUid : peerUid;
+        
+        return openerOf(existing, peerUid).equals(preferred) || !openerOf(incoming, peerUid).equals(preferred);
+    }
+    
+    
+    private UUID openerOf(Channel channel, UUID peerUid)
+    {
+        return Boolean.TRUE.equals(channel.attr(OUTBOUND).get()) ? nodeUid : peerUid;
+    }
+    
+    
+    /**
+     * Another node asked us to create a game app.
+     */
+    private void handleCreate(final Channel channel, Peer peer, ByteBuf frame)
+    {
+        final long requestId = frame.readLong();
+        final String name = ClusterProtocol.readString(frame);
+        final Handle<GameAppContext> parent = frame.readBoolean() ? handleOf(ClusterProtocol.readUid(frame), peer) : null;
+        final Map<String, String> params = new HashMap<>();
+        
+        for (int i = frame.readInt(); i > 0; i--)
+        {
+            params.put(ClusterProtocol.readString(frame), ClusterProtocol.readString(frame));
+        }
+        
+        // creating a game app may take a while, so dont block the network thread
+        GlobalExecutor.get().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Handle<GameAppContext> result = null;
+                
+                try
+                {
+                    result = container.createLocalGameApp(name, parent, params);
+                }
+                catch (RuntimeException ex)
+                {
+                    LOGGER.error("Failed to create game app for another node! [name {} ]", name, ex);
+                }
+                
+                ByteBuf reply = channel.alloc().buffer();
+                reply.writeByte(ClusterProtocol.CREATED);
+                reply.writeLong(requestId);
+                reply.writeBoolean(result != null);
+                
+                if (result != null)
+                {
+                    ClusterProtocol.writeUid(reply, result.getUid());
+                    ClusterProtocol.writeAddress(reply, addressOf(result));
+                }
+                
+                channel.writeAndFlush(reply);
+            }
+        });
+    }
+    
+    
+    /**
+     * Another node answered our creation request.
+     */
+    private void handleCreated(ByteBuf frame)
+    {
+        PendingCreation pendingCreation = pendingCreations.remove(frame.readLong());
+        
+        // timed out already
+        if (pendingCreation == null) { return; }
+        
+        if (!frame.readBoolean())
+        {
+            pendingCreation.Result.trySuccess(null);
+            return;
+        }
+        
+        UUID uid = ClusterProtocol.readUid(frame);
+        RemoteGameAppContext context = new RemoteGameAppContext(this, uid, pendingCreation.NodeUid, pendingCreation.Name, ClusterProtocol.readAddress(frame));
+        
+        // the other node announced it already (most likely)
+        RemoteGameAppContext existing = directory.putIfAbsent(uid, context);
+        
+        pendingCreation.Result.trySuccess((existing == null) ? context : existing);
+    }
+    
+    
+    /**
+     * Another node forwarded an event to one of our game apps.
+     */
+    private void handleEvent(ByteBuf frame)
+    {
+        UUID uid = ClusterProtocol.readUid(frame);
+        Handle<GameAppContext> target = container.tryGetGameApp(uid);
+        
+        if (target == null || target.get() instanceof RemoteGameAppContext)
+        {
+            LOGGER.debug("Got an event for an unknown game app. [uid {} ]", uid);
+            return;
+        }
+        
+        Event event;
+        
+        try
+        {
+            event = eventCodec.decode(frame);
+        }
+        catch (Exception ex)
+        {
+            LOGGER.warn("Cannot decode a forwarded event. [uid {} ]", uid, ex);
+            return;
+        }
+        
+        target.get().trigger(event);
+    }
+    
+    
+    /**
+     * Another node asked us to remove one of our game apps.
+     */
+    private void handleRemove(ByteBuf frame)
+    {
+        final Handle<GameAppContext> target = container.tryGetGameApp(ClusterProtocol.readUid(frame));
+        
+        if (target == null || target.get() instanceof RemoteGameAppContext) { return; }
+        
+        // unloading may take a while, so dont block the network thread
+        GlobalExecutor.get().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                container.removeGameApp(target);
+            }
+        });
+    }
+    
+    
+    /**
+     * A channel was closed.
+     */
+    private void handleDisconnect(Channel channel)
+    {
+        channels.remove(channel);
+        
+        Peer peer = channel.attr(PEER).get();
+        
+        // failcheck (this also ignores duplicate channels)
+        if (peer == null || !peers.remove(peer.NodeUid, peer)) { return; }
+        
+        for (Iterator<RemoteGameAppContext> it = directory.values().iterator(); it.hasNext();)
+        {
+            if (it.next().getNodeUid().equals(peer.NodeUid)) { it.remove(); }
+        }
+        
+        for (PendingCreation pendingCreation : pendingCreations.values())
+        {
+            if (pendingCreation.NodeUid.equals(peer.NodeUid)) { pendingCreation.Result.trySuccess(null); }
+        }
+        
+        LOGGER.info("Node left the cluster. [node {} ]", peer.NodeUid);
+    }
+    
+    
+    /**
+     * Get a game app by its uid, or assume it runs on the node that told us about it.
+     */
+    private Handle<GameAppContext> handleOf(UUID uid, Peer peer)
+    {
+        // most likely a game app of the node that asks
+        RemoteGameAppContext remote = directory.get(uid);
+        
+        if (remote != null) { return remote.getHandle(); }
+        
+        Handle<GameAppContext> result = container.tryGetGameApp(uid);
+        
+        if (result != null) { return result; }
+        
+        // not announced yet, the PLACED frame of that game app replaces this one
+        RemoteGameAppContext placeholder = new RemoteGameAppContext(this, uid, peer.NodeUid, "", null);
+        RemoteGameAppContext existing = directory.putIfAbsent(uid, placeholder);
+        
+        return (existing == null) ? placeholder.getHandle() : existing.getHandle();
+    }
+    
+    
+    private ByteBuf produceHello(Channel channel)
+    {
+        Set<String> factories = container.getFactoryNames();
+        
+        ByteBuf frame = channel.alloc().buffer();
+        frame.writeByte(ClusterProtocol.HELLO);
+        ClusterProtocol.writeUid(frame, nodeUid);
+        frame.writeShort(getLocalAddress().getPort());
+        frame.writeInt(localLoad());
+        frame.writeInt(factories.size());
+        
+        for (String factory : factories)
+        {
+            ClusterProtocol.writeString(frame, factory);
+        }
+        
+        return frame;
+    }
+    
+    
+    private ByteBuf producePlaced(Handle<GameAppContext> that)
+    {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeByte(ClusterProtocol.PLACED);
+        ClusterProtocol.writeUid(frame, that.getUid());
+        ClusterProtocol.writeString(frame, that.get().getName());
+        ClusterProtocol.writeAddress(frame, addressOf(that));
+        
+        return frame;
+    }
+    
+    
+    /**
+     * Send a frame to all other nodes.
+     */
+    private void broadcast(ByteBuf frame)
+    {
+        for (Peer peer : peers.values())
+        {
+            peer.Channel.writeAndFlush(frame.duplicate().retain());
+        }
+        
+        frame.release();
+    }
+    
+    
+    /**
+     * The address that clients of a local game app connect to (null if it has none)
+     */
+    private InetSocketAddress addressOf(Handle<GameAppContext> that)
+    {
+        try
+        {
+            return container.localAddressFor(that);
+        }
+        catch (RuntimeException ex)
+        {
+            return null;
+        }
+    }
+    
+    
+    /**
+     * The amount of game apps that run on this node.
+     */
+    private int localLoad()
+    {
+        return container.getGameApps().size();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+
+/**
+ * The frames that the nodes of a cluster exchange.
+ * 
+ * Each frame is prefixed with its length (see ClusterNode), and starts
+ * with one of the opcodes below:
+ * 
+ * HELLO    node-uid, cluster-port, load, factory-count, factory-names...
+ * LOAD     load
+ * PLACED   game-app-uid, name, host, port
+ * REMOVED  game-app-uid
+ * CREATE   request-id, name, has-parent, [parent-uid], param-count, (key, value)...
+ * CREATED  request-id, success, [game-app-uid, host, port]
+ * EVENT    game-app-uid, event (see EventCodec)
+ * REMOVE   game-app-uid
+ * 
+ * @author _rusty
+ */
+final class ClusterProtocol
+{
+    
+    public final static byte HELLO = 1;
+    public final static byte LOAD = 2;
+    public final static byte PLACED = 3;
+    public final static byte REMOVED = 4;
+    public final static byte CREATE = 5;
+    public final static byte CREATED = 6;
+    public final static byte EVENT = 7;
+    public final static byte REMOVE = 8;
+    
+    public final static int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    
+    
+    /**
+     * No instances.
+     */
+    private ClusterProtocol()
+    {
+    }
+    
+    
+    public static void writeUid(ByteBuf out, UUID uid)
+    {
+        out.writeLong(uid.getMostSignificantBits());
+        out.writeLong(uid.getLeastSignificantBits());
+    }
+    
+    
+    public static UUID readUid(ByteBuf in)
+    {
+        return new UUID(in.readLong(), in.readLong());
+    }
+    
+    
+    public static void writeString(ByteBuf out, String value)
+    {
+        byte[] bytes = value.getBytes(CharsetUtil.UTF_8);
+        
+        out.writeShort(bytes.length);
+        out.writeBytes(bytes);
+    }
+    
+    
+    public static String readString(ByteBuf in)
+    {
+        int length = in.readUnsignedShort();
+        String result = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        
+        in.skipBytes(length);
+        return result;
+    }
+    
+    
+    /**
+     * Write an address as host and port (an empty host if there is none)
+     */
+    public static void writeAddress(ByteBuf out, InetSocketAddress address)
+    {
+        writeString(out, (address == null) ? "" : address.getAddress().getHostAddress());
+        out.writeShort((address == null) ? 0 : address.getPort());
+    }
+    
+    
+    public static InetSocketAddress readAddress(ByteBuf in)
+    {
+        String host = readString(in);
+        int port = in.readUnsignedShort();
+        
+        return host.isEmpty() ? null : new InetSocketAddress(host, port);
+    }
+}
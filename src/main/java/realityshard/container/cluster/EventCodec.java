@@ -0,0 +1,167 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import realityshard.container.events.Event;
+
+
+/**
+ * Turns the events that are forwarded to remote game apps into bytes and back.
+ * (See ClusterNode.setEventCodec)
+ * 
+ * All nodes of a cluster must use the same codec.
+ * 
+ * @author _rusty
+ */
+public interface EventCodec
+{
+    
+    /**
+     * Write an event to the inter-node channel.
+     * 
+     * @param       event                   The event.
+     * @param       out                     The buffer of the frame.
+     * @throws      Exception               If the event cannot be encoded.
+     */
+    public void encode(Event event, ByteBuf out) throws Exception;
+    
+    
+    /**
+     * Read an event from the inter-node channel.
+     * 
+     * @param       in                      The rest of the frame.
+     * @return      The event.
+     * @throws      Exception               If the event cannot be decoded.
+     */
+    public Event decode(ByteBuf in) throws Exception;
+    
+    
+    /**
+     * Uses java serialization, so forwarded events must be Serializable.
+     * 
+     * Only the allowed classes (and the classes of java.lang) are deserialized,
+     * anything else in a frame is rejected before it is loaded. This includes the
+     * superclasses and the field types of the events (e.g. collections).
+     * Still, only use this if the cluster port can only be reached by trusted nodes.
+     */
+    public static class Serialization implements EventCodec
+    {
+        
+        /**
+         * Checks each class of the stream against the allow-list.
+         */
+        private final class CheckedInputStream extends ObjectInputStream
+        {
+            
+            public CheckedInputStream(InputStream in) throws IOException
+            {
+                super(in);
+            }
+            
+            
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+            {
+                if (!isAllowed(desc.getName())) { throw new InvalidClassException(desc.getName(), "Class is not allowed in forwarded events."); }
+                
+                return super.resolveClass(desc);
+            }
+            
+            
+            @Override
+            protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+            {
+                throw new InvalidClassException("Proxy classes are not allowed in forwarded events.");
+            }
+        }
+        
+        
+        private final Set<String> allowedClassNames;
+        
+        
+        /**
+         * Constructor.
+         * 
+         * @param       allowedClasses          The classes that may be deserialized.
+         */
+        public Serialization(Class<?>... allowedClasses)
+        {
+            Set<String> names = new HashSet<>();
+            
+            for (Class<?> allowedClass : allowedClasses)
+            {
+                names.add(allowedClass.getName());
+            }
+            
+            allowedClassNames = Collections.unmodifiableSet(names);
+        }
+        
+        
+        /**
+         * Getter.
+         * 
+         * @return      The names of the classes that may be deserialized.
+         */
+        public Set<String> getAllowedClassNames()
+        {
+            return allowedClassNames;
+        }
+        
+        
+        @Override
+        public void encode(Event event, ByteBuf out) throws Exception
+        {
+            try (ObjectOutputStream stream = new ObjectOutputStream(new ByteBufOutputStream(out)))
+            {
+                stream.writeObject(event);
+            }
+        }
+        
+        
+        @Override
+        public Event decode(ByteBuf in) throws Exception
+        {
+            try (ObjectInputStream stream = new CheckedInputStream(new ByteBufInputStream(in)))
+            {
+                return (Event) stream.readObject();
+            }
+        }
+        
+        
+        /**
+         * Check a class name of the stream (arrays are named like "[[Lsome.Event;")
+         */
+        private boolean isAllowed(String className)
+        {
+            int dimensions = 0;
+            while (dimensions < className.length() && className.charAt(dimensions) == '[') { dimensions++; }
+            
+            String elementName = className.substring(dimensions);
+            
+            if (dimensions > 0)
+            {
+                // arrays of primitives
+                if (elementName.length() == 1) { return true; }
+                
+                elementName = elementName.substring(1, elementName.length() - 1);
+            }
+            
+            return allowedClassNames.contains(elementName)
+                    || (elementName.startsWith("java.lang.") && elementName.indexOf('.', "java.lang.".length()) < 0);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.cluster;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.UUID;
+import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
+import realityshard.container.gameapp.GameAppContext;
+import realityshard.container.gameapp.GameAppManager;
+import realityshard.container.network.Message;
+import realityshard.container.util.Handle;
+
+
+/**
+ * A game app that runs on another node of the cluster.
+ * 
+ * Events that are triggered on this context are forwarded to that node
+ * (so they need to be supported by the EventCodec of the cluster).
+ * The game app manager methods are executed by the local container.
+ * 
+ * @author _rusty
+ */
+public final class RemoteGameAppContext implements GameAppContext
+{
+    
+    private final ClusterNode clusterNode;
+    private final UUID uid;
+    private final UUID nodeUid;
+    private final String name;
+    private final InetSocketAddress address;
+    
+    private final Handle<GameAppContext> handle = new Handle<GameAppContext>()
+    {
+        @Override
+        public GameAppContext get() { return RemoteGameAppContext.this; }
+        
+        @Override
+        public UUID getUid() { return uid; }
+        
+        // the game app belongs to the other node, use removeGameApp to unload it
+        @Override
+        public void invalidate() { }
+        
+        @Override
+        public int hashCode() { return uid.hashCode(); }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == null) { return false; }
+            if (getClass() != obj.getClass()) { return false; }
+            return uid.equals(((Handle<?>) obj).getUid());
+        }
+    };
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       clusterNode             The local node, that forwards the events.
+     * @param       uid                     The uid of the game app.
+     * @param       nodeUid                 The uid of the node that runs the game app.
+     * @param       name                    The name of the game app.
+     * @param       address                 The address that clients of the game app connect to (or null)
+     */
+    RemoteGameAppContext(ClusterNode clusterNode, UUID uid, UUID nodeUid, String name, InetSocketAddress address)
+    {
+        this.clusterNode = clusterNode;
+        this.uid = uid;
+        this.nodeUid = nodeUid;
+        this.name = name;
+        this.address = address;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The global handle of this game app.
+     */
+    public Handle<GameAppContext> getHandle()
+    {
+        return handle;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The uid of the node that runs this game app.
+     */
+    public UUID getNodeUid()
+    {
+        return nodeUid;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The address that clients of this game app connect to (or null)
+     */
+    public InetSocketAddress getAddress()
+    {
+        return address;
+    }
+    
+    
+    /**
+     * Messages belong to a client channel of this node, so they cannot be
+     * forwarded to another node (trigger an event of the EventCodec instead)
+     * 
+     * @throws      UnsupportedOperationException   Always.
+     */
+    @Override
+    public void handleMessage(Message message)
+    {
+        throw new UnsupportedOperationException("Remote game apps cannot handle the messages of local channels.");
+    }
+    
+    
+    @Override
+    public void trigger(Event event)
+    {
+        clusterNode.forward(this, event);
+    }
+    
+    
+    /**
+     * Remote game apps have no local aggregator.
+     * 
+     * @throws      UnsupportedOperationException   Always.
+     */
+    @Override
+    public EventAggregator getEventAggregator()
+    {
+        throw new UnsupportedOperationException("Remote game apps have no local event aggregator.");
+    }
+    
+    
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+    
+    
+    @Override
+    public GameAppManager getManager()
+    {
+        return clusterNode.getContainer();
+    }
+    
+    
+    /**
+     * The parent of a remote game app is not known on this node.
+     */
+    @Override
+    public Handle<GameAppContext> getParentContext()
+    {
+        return null;
+    }
+    
+    
+    @Override
+    public boolean canCreateGameApp(String name)
+    {
+        return getManager().canCreateGameApp(name);
+    }
+    
+    
+    @Override
+    public Handle<GameAppContext> createGameApp(String name, Handle<GameAppContext> parent, Map<String, String> additionalParams)
+    {
+        return getManager().createGameApp(name, parent, additionalParams);
+    }
+    
+    
+    @Override
+    public Handle<GameAppContext> tryGetGameApp(UUID gameAppUid)
+    {
+        return getManager().tryGetGameApp(gameAppUid);
+    }
+    
+    
+    @Override
+    public void removeGameApp(Handle<GameAppContext> that)
+    {
+        getManager().removeGameApp(that);
+    }
+    
+    
+    @Override
+    public InetSocketAddress localAddressFor(Handle<GameAppContext> that)
+    {
+        return getManager().localAddressFor(that);
+    }
+}
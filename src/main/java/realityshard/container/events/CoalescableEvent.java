@@ -0,0 +1,28 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+
+/**
+ * An event that only matters in its latest state, like a position update.
+ * 
+ * If such an event is triggered while an older event with the same key is still
+ * waiting for a handler, the older event will be replaced by the new one and thus
+ * never be handled. (Inline handlers always get all events though)
+ * 
+ * @author _rusty
+ */
+public interface CoalescableEvent extends Event
+{
+    
+    /**
+     * Getter.
+     * 
+     * @return      The key that identifies what this event updates, e.g. the
+     *              channel of the client. Events with equal keys replace each other.
+     *              May be null, meaning that all events of this class replace each other.
+     */
+    public Object getCoalescingKey();
+}
@@ -0,0 +1,63 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import java.util.List;
+
+
+/**
+ * The JMX view of the dispatch metrics of an event aggregator.
+ * 
+ * @author _rusty
+ */
+public interface DispatchMetricsMXBean
+{
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if triggers and timings are recorded.
+     *              (Failed handler calls are always counted)
+     */
+    public boolean isEnabled();
+    
+    
+    /**
+     * Setter.
+     * 
+     * @param       enabled                 True if timings should be recorded.
+     */
+    public void setEnabled(boolean enabled);
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The statistics of each event type that has been triggered.
+     */
+    public List<DispatchStatistics> getEventStatistics();
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The statistics of each handler method.
+     */
+    public List<DispatchStatistics> getHandlerStatistics();
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of queued handler calls, or -1 if the queue is not bounded.
+     */
+    public int getQueueDepth();
+    
+    
+    /**
+     * Forget all recorded values.
+     */
+    public void reset();
+}
@@ -0,0 +1,508 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A bounded queue of handler calls in front of an executor.
+ * 
+ * Instead of sending every task to the executor directly, the tasks are queued
+ * here and a limited amount of drain tasks is sent to the executor, which will
+ * then work through the queue. If the queue is full, the overflow policy decides
+ * what happens with new tasks.
+ * 
+ * Give this to an event aggregator as its executor to limit its queue.
+ * 
+ * @author _rusty
+ */
+public final class DispatchQueue implements Executor
+{
+    
+    /**
+     * Determines what happens when a task is added to a full queue
+     */
+    public static enum OverflowPolicy
+    {
+        /**
+         * The triggering thread waits until there is space in the queue again.
+         * 
+         * Threads that are draining this queue themselves will never wait, and
+         * neither will the event loops of the group that runs this queue (if the
+         * executor is one of its loops). For those, the channel that the event came
+         * from stops reading like with PAUSE_READING, and tasks that did not come
+         * from a channel are dropped.
+         */
+        BLOCK,
+        
+        /**
+         * The oldest task in the queue is dropped to make space for the new one
+         */
+        DROP_OLDEST,
+        
+        /**
+         * The new task is dropped
+         */
+        DROP_NEWEST,
+        
+        /**
+         * The new task is accepted, but the channel that the event came from stops
+         * reading, until the queue has been drained to half of its capacity.
+         * (Tasks that did not come from a channel are always accepted)
+         */
+        PAUSE_READING
+    }
+    
+    
+    /**
+     * Tasks that need to know when they were dropped by the overflow policy,
+     * e.g. to release resources
+     */
+    public static interface DroppableTask extends Runnable
+    {
+        
+        /**
+         * Called instead of run(), when the task has been dropped.
+         */
+        public void dropped();
+    }
+    
+    
+    /**
+     * The amount of tasks that are run per drain task before the thread is
+     * given back to the executor
+     */
+    public static final int BATCH_SIZE = 64;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(DispatchQueue.class);
+    
+    private final Executor executor;
+    private final int capacity;
+    private final int parallelism;
+    private final OverflowPolicy policy;
+    
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger(0);
+    private final AtomicInteger activeDrainers = new AtomicInteger(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final ThreadLocal<Boolean> isDraining = new ThreadLocal<>();
+    
+    // blocked producers wait for this
+    private final Object spaceAvailable = new Object();
+    private final AtomicInteger waitingProducers = new AtomicInteger(0);
+    
+    // channels that we stopped reading from (only used with the set itself as lock)
+    private final Set<Channel> pausedChannels = new HashSet<>();
+    private volatile boolean hasPausedChannels = false;
+    
+    private final Runnable drainer = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            drain();
+        }
+    };
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       executor                The executor that will actually run the tasks.
+     * @param       capacity                The maximum amount of queued tasks.
+     * @param       policy                  What to do when the queue is full.
+     */
+    public DispatchQueue(Executor executor, int capacity, OverflowPolicy policy)
+    {
+        this(executor, capacity, policy, Runtime.getRuntime().availableProcessors());
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       executor                The executor that will actually run the tasks.
+     * @param       capacity                The maximum amount of queued tasks.
+     * @param       policy                  What to do when the queue is full.
+     * @param       parallelism             The maximum amount of threads of the executor
+     *                                      that work on this queue at the same time.
+     */
+    public DispatchQueue(Executor executor, int capacity, OverflowPolicy policy, int parallelism)
+    {
+        if (capacity < 1) { throw new IllegalArgumentException("The capacity must be positive."); }
+        if (parallelism < 1) { throw new IllegalArgumentException("The parallelism must be positive."); }
+        
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.parallelism = parallelism;
+    }
+    
+    
+    /**
+     * Add a task that did not come from a channel.
+     * 
+     * @param       task                    The task.
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        execute(task, null);
+    }
+    
+    
+    /**
+     * Add a task to the queue, applying the overflow policy if the queue is full.
+     * 
+     * @param       task                    The task.
+     * @param       origin                  The channel that the task came from (may be null)
+     */
+    public void execute(Runnable task, Channel origin)
+    {
+        if (!tryReserve())
+        {
+            switch (policy)
+            {
+                case DROP_NEWEST:
+                    drop(task);
+                    return;
+                    
+                case DROP_OLDEST:
+                    Runnable oldest = queue.poll();
+                    if (oldest != null)
+                    {
+                        // we take over the slot of the task that we dropped
+                        drop(oldest);
+                        break;
+                    }
+                    // the queue has just been emptied, so simply add the new task
+                    depth.incrementAndGet();
+                    break;
+                    
+                case PAUSE_READING:
+                    depth.incrementAndGet();
+                    pause(origin);
+                    break;
+                    
+                case BLOCK:
+                    if (mayWait())
+                    {
+                        awaitSpace();
+                        break;
+                    }
+                    // waiting for ourselves would never end, so stop reading
+                    // from the channel instead (like PAUSE_READING does)
+                    if (origin == null)
+                    {
+                        drop(task);
+                        return;
+                    }
+                    depth.incrementAndGet();
+                    pause(origin);
+                    break;
+            }
+        }
+        
+        queue.offer(task);
+        ensureDrainer();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of tasks that are currently waiting in this queue.
+     */
+    public int getDepth()
+    {
+        return depth.get();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The maximum amount of queued tasks.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The overflow policy of this queue.
+     */
+    public OverflowPolicy getPolicy()
+    {
+        return policy;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of tasks that have been dropped so far.
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of channels that we currently stopped reading from.
+     */
+    public int getPausedChannelCount()
+    {
+        synchronized (pausedChannels)
+        {
+            return pausedChannels.size();
+        }
+    }
+    
+    
+    /**
+     * Count a task as dropped and tell it, if it wants to know.
+     */
+    private void drop(Runnable task)
+    {
+        droppedCount.incrementAndGet();
+        
+        if (task instanceof DroppableTask)
+        {
+            try
+            {
+                ((DroppableTask) task).dropped();
+            }
+            catch (RuntimeException ex)
+            {
+                LOGGER.warn("A dropped task of a dispatch queue failed.", ex);
+            }
+        }
+    }
+    
+    
+    /**
+     * Take a slot in the queue if there is one left.
+     */
+    private boolean tryReserve()
+    {
+        while (true)
+        {
+            int current = depth.get();
+            
+            if (current >= capacity) { return false; }
+            
+            if (depth.compareAndSet(current, current + 1)) { return true; }
+        }
+    }
+    
+    
+    /**
+     * Check if the current thread may wait for space in the queue.
+     * 
+     * Threads that drain this queue must not, and neither must the event loops
+     * of the group that runs it: The loop of this queue could be the one that waits,
+     * or it could be waiting for the queue of a game app of the current loop.
+     */
+    private boolean mayWait()
+    {
+        if (isDraining.get() != null) { return false; }
+        if (!(executor instanceof EventExecutor)) { return true; }
+        
+        EventExecutorGroup group = ((EventExecutor) executor).parent();
+        
+        if (group == null) { return !((EventExecutor) executor).inEventLoop(); }
+        
+        for (EventExecutor loop : group)
+        {
+            if (loop.inEventLoop()) { return false; }
+        }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Wait until we got a slot in the queue.
+     */
+    private void awaitSpace()
+    {
+        boolean interrupted = false;
+        
+        synchronized (spaceAvailable)
+        {
+            waitingProducers.incrementAndGet();
+            
+            try
+            {
+                while (!tryReserve())
+                {
+                    try
+                    {
+                        spaceAvailable.wait();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally
+            {
+                waitingProducers.decrementAndGet();
+            }
+        }
+        
+        if (interrupted) { Thread.currentThread().interrupt(); }
+    }
+    
+    
+    /**
+     * Stop reading from a channel, until the queue has been drained.
+     */
+    private void pause(Channel origin)
+    {
+        if (origin == null) { return; }
+        
+        synchronized (pausedChannels)
+        {
+            if (pausedChannels.add(origin))
+            {
+                origin.config().setAutoRead(false);
+                hasPausedChannels = true;
+            }
+        }
+    }
+    
+    
+    /**
+     * Start reading from all channels again.
+     */
+    private void resumeAll()
+    {
+        synchronized (pausedChannels)
+        {
+            for (Channel channel : pausedChannels)
+            {
+                channel.config().setAutoRead(true);
+            }
+            
+            pausedChannels.clear();
+            hasPausedChannels = false;
+        }
+    }
+    
+    
+    /**
+     * Make sure that enough drain tasks are running.
+     */
+    private void ensureDrainer()
+    {
+        while (true)
+        {
+            int current = activeDrainers.get();
+            
+            if (current >= parallelism) { return; }
+            
+            if (activeDrainers.compareAndSet(current, current + 1))
+            {
+                executor.execute(drainer);
+                return;
+            }
+        }
+    }
+    
+    
+    /**
+     * Run a batch of queued tasks.
+     */
+    private void drain()
+    {
+        isDraining.set(Boolean.TRUE);
+        
+        try
+        {
+            for (int i = 0; i < BATCH_SIZE; i++)
+            {
+                Runnable task = queue.poll();
+                
+                if (task == null) { break; }
+                
+                int current = depth.decrementAndGet();
+                
+                // wake up anyone waiting for space
+                if (waitingProducers.get() > 0)
+                {
+                    synchronized (spaceAvailable) { spaceAvailable.notifyAll(); }
+                }
+                
+                if (hasPausedChannels && current <= capacity / 2)
+                {
+                    resumeAll();
+                }
+                
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException ex)
+                {
+                    LOGGER.warn("A task of a dispatch queue failed.", ex);
+                }
+            }
+        }
+        finally
+        {
+            isDraining.remove();
+            
+            // even if a task threw an error, the drainer slot must not be
+            // lost, or the queue would stop draining after a few errors
+            reschedule();
+        }
+    }
+    
+    
+    /**
+     * Give the drain task back to the executor if there is more to do,
+     * or release the drainer slot.
+     */
+    private void reschedule()
+    {
+        // if the batch was full, we let other tasks of the executor
+        // run before we continue (and we keep our drainer slot)
+        if (!queue.isEmpty())
+        {
+            executor.execute(drainer);
+            return;
+        }
+        
+        activeDrainers.decrementAndGet();
+        
+        // a producer might have added something after we checked the queue
+        // but before we gave up our slot, so check again
+        if (!queue.isEmpty())
+        {
+            ensureDrainer();
+        }
+    }
+}
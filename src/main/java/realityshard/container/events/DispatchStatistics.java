@@ -0,0 +1,152 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import java.beans.ConstructorProperties;
+
+
+/**
+ * A snapshot of the dispatch metrics of one event type or one handler method.
+ * (Times are in nanoseconds. Values that dont apply to event types are 0 for them)
+ * 
+ * @author _rusty
+ */
+public final class DispatchStatistics
+{
+    
+    private final String name;
+    private final long count;
+    private final long failures;
+    private final long meanWaitNanos;
+    private final long p99WaitNanos;
+    private final long meanExecutionNanos;
+    private final long p50ExecutionNanos;
+    private final long p99ExecutionNanos;
+    private final long maxExecutionNanos;
+    
+    
+    @ConstructorProperties({"name", "count", "failures", "meanWaitNanos", "p99WaitNanos", 
+                            "meanExecutionNanos", "p50ExecutionNanos", "p99ExecutionNanos", "maxExecutionNanos"})
+    public DispatchStatistics(String name, long count, long failures, long meanWaitNanos, long p99WaitNanos, 
+            long meanExecutionNanos, long p50ExecutionNanos, long p99ExecutionNanos, long maxExecutionNanos)
+    {
+        this.name = name;
+        this.count = count;
+        this.failures = failures;
+        this.meanWaitNanos = meanWaitNanos;
+        this.p99WaitNanos = p99WaitNanos;
+        this.meanExecutionNanos = meanExecutionNanos;
+        this.p50ExecutionNanos = p50ExecutionNanos;
+        this.p99ExecutionNanos = p99ExecutionNanos;
+        this.maxExecutionNanos = maxExecutionNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The event class name, or the handler method name (Class.method)
+     */
+    public String getName()
+    {
+        return name;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of triggered events, or of handler calls.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of handler calls that threw an exception.
+     */
+    public long getFailures()
+    {
+        return failures;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The average time between triggering the event and calling the handler.
+     */
+    public long getMeanWaitNanos()
+    {
+        return meanWaitNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The 99th percentile of the time between triggering the event and calling the handler.
+     */
+    public long getP99WaitNanos()
+    {
+        return p99WaitNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The average execution time of the handler.
+     */
+    public long getMeanExecutionNanos()
+    {
+        return meanExecutionNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The median execution time of the handler.
+     */
+    public long getP50ExecutionNanos()
+    {
+        return p50ExecutionNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The 99th percentile of the execution time of the handler.
+     */
+    public long getP99ExecutionNanos()
+    {
+        return p99ExecutionNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The longest execution time of the handler.
+     */
+    public long getMaxExecutionNanos()
+    {
+        return maxExecutionNanos;
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s [count %d ] [failures %d ] [wait mean/p99 %d/%d ns ] [exec mean/p50/p99/max %d/%d/%d/%d ns ]",
+                name, count, failures, meanWaitNanos, p99WaitNanos, meanExecutionNanos, p50ExecutionNanos, p99ExecutionNanos, maxExecutionNanos);
+    }
+}
@@ -29,5 +29,31 @@ public interface Event
     @Inherited
     public @interface Handler 
     {
+        
+        /**
+         * Inline handlers are called directly by the thread that triggers the event
+         * (e.g. a network thread), instead of being sent to the executor.
+         * Use this only for tiny handlers that never block, where the thread
+         * handoff would cost more than the handler itself.
+         * 
+         * @return  True if the handler should be called on the triggering thread.
+         */
+        boolean inline() default false;
+        
+        
+        /**
+         * Coalescing handlers only get the latest of the events that are waiting
+         * for them: If an event arrives while an older one with the same key
+         * has not been handled yet, the older one is dropped.
+         * The key is taken from CoalescableEvent, or is the channel of a message.
+         * (Events that implement CoalescableEvent are always coalesced)
+         * 
+         * Coalescing handlers are always called by tasks of their own, even if
+         * the aggregator uses DispatchMode.PER_EVENT, so they may run concurrently
+         * with (or after) the other handlers of the same event.
+         * 
+         * @return  True if the handler should skip outdated events.
+         */
+        boolean coalesce() default false;
     }
 }
@@ -4,17 +4,35 @@
 
 package realityshard.container.events;
 
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import realityshard.container.GlobalExecutor;
+import realityshard.container.network.Message;
+import realityshard.container.util.ObjectPool;
 
 /**
  * An Event Aggregator is a module that decouples the component that actually 
@@ -27,51 +45,327 @@ import realityshard.container.GlobalExecutor;
  * whenever their specific event gets triggered. Generally speaking, the Event 
  * Aggregator is a special kind of mediator.
  * 
+ * Handlers also receive the events that are subclasses of (or implement)
+ * the event type of their parameter. The handlers of each concrete event
+ * class are resolved only once and then cached, until the registrations change.
+ * 
  * @author _rusty
  */
 public class EventAggregator
 {
     
+    /**
+     * Determines how the handler calls are sent to the executor
+     */
+    public static enum DispatchMode
+    {
+        /**
+         * Each handler call is a task of its own, so the handlers of one
+         * event may run concurrently (the default)
+         */
+        PER_HANDLER,
+        
+        /**
+         * There is only one task per event, which calls all the handlers
+         * one after another, in the order they were registered.
+         * Coalescing handlers are the exception: They still get a task of
+         * their own (per pending key), because they must only see the latest
+         * event, which might not be the one that the per-event task carries
+         */
+        PER_EVENT
+    }
+    
+    
+    /**
+     * Is notified whenever handlers are registered with or unregistered from
+     * an aggregator, e.g. to drop anything cached based on hasHandlers.
+     */
+    public static interface RegistrationListener
+    {
+        /**
+         * Called after the registrations of an aggregator changed.
+         * (This is called after the aggregator has been unlocked, by the thread
+         * that changed the registrations)
+         * 
+         * @param       aggregator              The aggregator.
+         * @param       eventClasses            The event classes whose handlers changed.
+         *                                      (So did those of their subclasses)
+         */
+        public void registrationsChanged(EventAggregator aggregator, Set<Class<? extends Event>> eventClasses);
+    }
+    
+    
     // Storage class
-    private static final class EventHandlerReference
+    static final class EventHandlerReference
     {
         public Object HandlerObject;
-        public Method HandlerMethod;
+        public String HandlerName;
+        public Class<? extends Event> EventClass;
+        public EventHandlerInvoker HandlerInvoker;
+        public long Sequence;
+        public boolean Inline;
+        public boolean Coalesce;
+        public DispatchMetrics.HandlerMetrics Metrics;
+        
+        // events waiting for this (coalescing) handler, per concrete event class and key
+        public final ConcurrentMap<Class<?>, ConcurrentMap<Object, Event>> PendingEvents = new ConcurrentHashMap<>();
+    }
+    
+    // Storage class, all handlers of a concrete event class
+    private static final class ResolvedHandlers
+    {
+        public EventHandlerReference[] Inline;
+        public EventHandlerReference[] Async;
+        public EventHandlerReference[] Coalesced;
+        public DispatchMetrics.EventMetrics Metrics;
+    }
+    
+    // Invoker that uses a pre-bound method handle (the fast path)
+    private static final class MethodHandleInvoker implements EventHandlerInvoker
+    {
+        private final MethodHandle handle;
+        
+        
+        public MethodHandleInvoker(MethodHandle handle)
+        {
+            this.handle = handle;
+        }
+        
+        
+        @Override
+        public void invoke(Event event) throws Throwable
+        {
+            handle.invokeExact(event);
+        }
+    }
+    
+    // Invoker that uses plain reflection (used if we cannot get a method handle)
+    private static final class ReflectiveInvoker implements EventHandlerInvoker
+    {
+        private final Object handlerObject;
+        private final Method handlerMethod;
+        
+        
+        public ReflectiveInvoker(Object handlerObject, Method handlerMethod)
+        {
+            this.handlerObject = handlerObject;
+            this.handlerMethod = handlerMethod;
+        }
+        
+        
+        @Override
+        public void invoke(Event event) throws Throwable
+        {
+            try
+            {
+                handlerMethod.invoke(handlerObject, event);
+            }
+            catch (InvocationTargetException ex)
+            {
+                throw ex.getCause();
+            }
+        }
     }
 
     // Util class
-    private static final class Invokable implements Runnable
+    private static final class Invokable implements DispatchQueue.DroppableTask
     {
         private final EventHandlerReference invokableHandler;
         private final Event parameter;
+        private final long queuedAt;
+        
+        
+        public Invokable(EventHandlerReference invokableHandler, Event parameter, long queuedAt)
+        {
+            this.invokableHandler = invokableHandler;
+            this.parameter = retain(parameter);
+            this.queuedAt = queuedAt;
+        }
+        
+        
+        @Override
+        public void run() 
+        {
+            try
+            {
+                invokeHandler(invokableHandler, parameter, queuedAt);
+            }
+            finally
+            {
+                release(parameter);
+            }
+        }
+        
+        
+        @Override
+        public void dropped()
+        {
+            release(parameter);
+        }
+    }
+    
+    // Util class, calls a handler with the latest pending event of a key
+    private static final class CoalescedInvokable implements DispatchQueue.DroppableTask
+    {
+        private final EventHandlerReference invokableHandler;
+        private final ConcurrentMap<Object, Event> pendingEvents;
+        private final Object key;
+        private final long queuedAt;
         
         
-        public Invokable(EventHandlerReference invokableHandler, Event parameter)
+        public CoalescedInvokable(EventHandlerReference invokableHandler, ConcurrentMap<Object, Event> pendingEvents, Object key, long queuedAt)
         {
             this.invokableHandler = invokableHandler;
-            this.parameter = parameter;
+            this.pendingEvents = pendingEvents;
+            this.key = key;
+            this.queuedAt = queuedAt;
+        }
+        
+        
+        @Override
+        public void run() 
+        {
+            // any event that is triggered from now on needs a new task
+            Event latest = pendingEvents.remove(key);
+            
+            if (latest == null) { return; }
+            
+            try
+            {
+                invokeHandler(invokableHandler, latest, queuedAt);
+            }
+            finally
+            {
+                release(latest);
+            }
+        }
+        
+        
+        @Override
+        public void dropped()
+        {
+            // the next event of this key will get a new task
+            Event latest = pendingEvents.remove(key);
+            
+            if (latest != null) { release(latest); }
+        }
+    }
+    
+    // Util class, calls all handlers of an event (these are pooled)
+    private static final class EventTask implements DispatchQueue.DroppableTask
+    {
+        private final ObjectPool.Handle<EventTask> poolHandle;
+        private EventHandlerReference[] handlers;
+        private Event parameter;
+        private long queuedAt;
+        
+        
+        public EventTask(ObjectPool.Handle<EventTask> poolHandle)
+        {
+            this.poolHandle = poolHandle;
+        }
+        
+        
+        public EventTask init(EventHandlerReference[] handlers, Event parameter, long queuedAt)
+        {
+            this.handlers = handlers;
+            this.parameter = retain(parameter);
+            this.queuedAt = queuedAt;
+            return this;
         }
         
         
         @Override
         public void run() 
         {
-            try 
-            { 
-                invokableHandler.HandlerMethod.invoke(invokableHandler.HandlerObject, parameter); 
-            } 
-            catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) 
-            { 
-                LOGGER.warn("Could not execute an event handler", ex); 
+            try
+            {
+                for (EventHandlerReference handler : handlers)
+                {
+                    invokeHandler(handler, parameter, queuedAt);
+                }
+            }
+            finally
+            {
+                dropped();
             }
         }
+        
+        
+        @Override
+        public void dropped()
+        {
+            release(parameter);
+            
+            // dont keep the event alive while this task is in the pool
+            handlers = null;
+            parameter = null;
+            poolHandle.recycle();
+        }
     }
     
     
     private static final Logger LOGGER = LoggerFactory.getLogger(EventAggregator.class);
     
-    private final Map<Class<? extends Event>, List<EventHandlerReference>> eventMapping;
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Event.class);
+    
+    // the generated dispatchers of handler classes (or NO_DISPATCHER if there is none)
+    private static final EventDispatcher NO_DISPATCHER = new EventDispatcher()
+    {
+        @Override
+        public void bind(Object handlerImpl, Registry registry) { }
+    };
+    
+    private static final ClassValue<EventDispatcher> DISPATCHERS = new ClassValue<EventDispatcher>()
+    {
+        @Override
+        protected EventDispatcher computeValue(Class<?> type)
+        {
+            return loadDispatcher(type);
+        }
+    };
+    
+    private static final EventHandlerReference[] NO_HANDLERS = new EventHandlerReference[0];
+    
+    // the tasks dont belong to any aggregator, so all of them share one pool
+    // (otherwise every aggregator would keep its own tasks on every thread)
+    private static final ObjectPool<EventTask> TASK_POOL = new ObjectPool<EventTask>()
+    {
+        @Override
+        protected EventTask newObject(ObjectPool.Handle<EventTask> handle)
+        {
+            return new EventTask(handle);
+        }
+    };
+    
+    // the coalescing key of events that dont have one
+    private static final Object NO_KEY = new Object();
+    
+    private static final Comparator<EventHandlerReference> REGISTRATION_ORDER = new Comparator<EventHandlerReference>()
+    {
+        @Override
+        public int compare(EventHandlerReference o1, EventHandlerReference o2)
+        {
+            return Long.compare(o1.Sequence, o2.Sequence);
+        }
+    };
+    
+    private final Map<Class<? extends Event>, EventHandlerReference[]> eventMapping;
+    private final Object registrationLock = new Object();
+    private long registrationCount = 0;
+    
+    // handler object to its associations, so we can unregister it quickly
+    // (only used with the registration lock)
+    private final Map<Object, List<EventHandlerReference>> handlerIndex = new HashMap<>();
+    
+    // concrete event class to all handlers that accept it (including those
+    // of its supertypes). this is replaced whenever the registrations change
+    private volatile Map<Class<?>, ResolvedHandlers> resolvedMapping = new ConcurrentHashMap<>();
+    private final List<RegistrationListener> registrationListeners = new CopyOnWriteArrayList<>();
     private final Executor executor;
+    private final DispatchQueue dispatchQueue;
+    private final DispatchMode dispatchMode;
+    private final DispatchMetrics metrics;
     
     
     
@@ -81,7 +375,39 @@ public class EventAggregator
     public EventAggregator()
     {
         // get the executor defined by the application
-        this.executor = GlobalExecutor.get();
+        this(GlobalExecutor.get());
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       executor                The executor that runs the handlers.
+     *                                      Use a serial executor if the handlers
+     *                                      should never run concurrently.
+     */
+    public EventAggregator(Executor executor)
+    {
+        this(executor, DispatchMode.PER_HANDLER);
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       executor                The executor that runs the handlers.
+     *                                      Use a serial executor if the handlers
+     *                                      should never run concurrently, or a dispatch
+     *                                      queue if the amount of queued calls should be limited.
+     * @param       dispatchMode            Determines whether there is one task per
+     *                                      handler call or one task per event.
+     */
+    public EventAggregator(Executor executor, DispatchMode dispatchMode)
+    {
+        this.executor = executor;
+        this.dispatchQueue = (executor instanceof DispatchQueue) ? (DispatchQueue) executor : null;
+        this.dispatchMode = dispatchMode;
+        this.metrics = new DispatchMetrics(dispatchQueue);
         eventMapping = new ConcurrentHashMap<>();
     }
     
@@ -105,6 +431,453 @@ public class EventAggregator
      */
     public EventAggregator register(Object handlerImpl)
     {
+        return registerAll(Collections.singletonList(handlerImpl));
+    }
+    
+    
+    /**
+     * Register many objects that hold handler methods at once.
+     * 
+     * This is cheaper than registering them one by one, because the
+     * handler lists of each event are only copied once.
+     * 
+     * (This is a fluent method)
+     * 
+     * @param       handlerImpls            The objects that hold the handlers. 
+     *                                      See register(Object)
+     * @return      This aggregator.
+     */
+    public EventAggregator registerAll(Iterable<?> handlerImpls)
+    {
+        // do the reflection stuff before we lock anything
+        List<EventHandlerReference> found = new ArrayList<>();
+        
+        for (Object handlerImpl : handlerImpls)
+        {
+            collectHandlers(handlerImpl, found);
+        }
+        
+        if (found.isEmpty()) { return this; }
+        
+        // we want to add the handler methods to a list of methods that have the same
+        // signature, and thus handle the same event.
+        // the lists are copied on write, so triggering an event never needs to lock
+        Map<Class<? extends Event>, List<EventHandlerReference>> added = new HashMap<>();
+        
+        synchronized (registrationLock)
+        {
+            for (EventHandlerReference handler : found)
+            {
+                handler.Sequence = registrationCount++;
+                handler.Metrics = metrics.forHandler(handler.HandlerName);
+                
+                addToList(added, handler.EventClass, handler);
+                addToList(handlerIndex, handler.HandlerObject, handler);
+            }
+            
+            for (Map.Entry<Class<? extends Event>, List<EventHandlerReference>> entry : added.entrySet())
+            {
+                EventHandlerReference[] list = eventMapping.get(entry.getKey());
+
+                if (list == null)
+                {
+                    // if there is no entry yet, create a new handler list for this event
+                    list = NO_HANDLERS;
+                }
+                
+                // finally add the handler references
+                int oldLength = list.length;
+                list = Arrays.copyOf(list, oldLength + entry.getValue().size());
+                
+                for (int i = oldLength; i < list.length; i++)
+                {
+                    list[i] = entry.getValue().get(i - oldLength);
+                }
+                
+                eventMapping.put(entry.getKey(), list);
+            }
+            
+            invalidateResolvedMapping();
+        }
+        
+        notifyRegistrationListeners(added.keySet());
+        
+        return this;
+    }
+    
+    
+    /**
+     * Unregister all handlers implemented within the given object
+     * 
+     * @param       handlerImpl             The object that holds different kind of handlers.
+     *                                      (Objects are identified by equals/hashCode)
+     */
+    public void unregister(Object handlerImpl)
+    {
+        unregisterAll(Collections.singletonList(handlerImpl));
+    }
+    
+    
+    /**
+     * Unregister all handlers implemented within the given objects.
+     * 
+     * This is cheaper than unregistering them one by one, because the
+     * handler lists of each event are only copied once.
+     * 
+     * @param       handlerImpls            The objects that hold the handlers.
+     *                                      (Objects are identified by equals/hashCode)
+     */
+    public void unregisterAll(Iterable<?> handlerImpls)
+    {
+        // look up the associations of the objects, and only touch
+        // the handler lists of the events they actually handle
+        Map<Class<? extends Event>, Set<EventHandlerReference>> removed = new HashMap<>();
+        
+        synchronized (registrationLock)
+        {
+            for (Object handlerImpl : handlerImpls)
+            {
+                List<EventHandlerReference> handlers = handlerIndex.remove(handlerImpl);
+                
+                if (handlers == null) { continue; }
+                
+                for (EventHandlerReference handler : handlers)
+                {
+                    Set<EventHandlerReference> set = removed.get(handler.EventClass);
+                    
+                    if (set == null)
+                    {
+                        set = new HashSet<>();
+                        removed.put(handler.EventClass, set);
+                    }
+                    
+                    set.add(handler);
+                }
+            }
+            
+            if (removed.isEmpty()) { return; }
+            
+            for (Map.Entry<Class<? extends Event>, Set<EventHandlerReference>> entry : removed.entrySet())
+            {
+                EventHandlerReference[] list = eventMapping.get(entry.getKey());
+                EventHandlerReference[] remaining = new EventHandlerReference[list.length];
+                int count = 0;
+                
+                for (EventHandlerReference handler : list)
+                {
+                    if (!entry.getValue().contains(handler))
+                    {
+                        remaining[count++] = handler;
+                    }
+                }
+                
+                if (count == 0)
+                {
+                    eventMapping.remove(entry.getKey());
+                }
+                else
+                {
+                    eventMapping.put(entry.getKey(), Arrays.copyOf(remaining, count));
+                }
+            }
+            
+            invalidateResolvedMapping();
+        }
+        
+        notifyRegistrationListeners(removed.keySet());
+    }
+    
+    
+    
+    /**
+     * Trigger an event globally; the EventAggregator will try to distribute it to all 
+     * registered handler methods
+     * 
+     * @param       event                   The event that will be published on this event-aggregator
+     */
+    public void triggerEvent(Event event)
+    {
+        // get the listeners of the event
+        ResolvedHandlers handlers = resolvedHandlersOf(event.getClass());
+        
+        // this is 0 if the metrics are disabled
+        long queuedAt = metrics.queuedAt();
+        
+        if (queuedAt != 0)
+        {
+            handlers.Metrics.Triggers.incrementAndGet();
+        }
+        
+        // send the asynchronous handlers to the executor first,
+        // so they can already start while we are busy with the inline ones
+        if (handlers.Async.length > 0)
+        {
+            dispatchHandlers(handlers.Async, event, queuedAt);
+        }
+        
+        // coalescing handlers only get a new task if there is no event
+        // of the same key waiting for them already, otherwise we just replace that event
+        if (handlers.Coalesced.length > 0)
+        {
+            Object key = coalescingKeyOf(event);
+            
+            for (EventHandlerReference handler : handlers.Coalesced)
+            {
+                ConcurrentMap<Object, Event> pending = pendingEventsOf(handler, event.getClass());
+                Event replaced = pending.put(key, retain(event));
+                
+                if (replaced != null)
+                {
+                    // that one will never be handled
+                    release(replaced);
+                }
+                else
+                {
+                    dispatch(new CoalescedInvokable(handler, pending, key, queuedAt), event);
+                }
+            }
+        }
+        
+        for (EventHandlerReference handler : handlers.Inline)
+        {
+            invokeHandler(handler, event, queuedAt);
+        }
+    }
+    
+    
+    /**
+     * Call all handlers of an event right away, in the calling thread (the inline ones
+     * first, in registration order).
+     * Unlike triggerEvent, this does not queue a task for each handler call, so it must
+     * only be called by a task that runs on the threads of this aggregator (see execute),
+     * e.g. to handle a whole batch of events with one task.
+     * 
+     * @param       event                   The event.
+     */
+    public void handleEvent(Event event)
+    {
+        ResolvedHandlers handlers = resolvedHandlersOf(event.getClass());
+        
+        // this is 0 if the metrics are disabled
+        long queuedAt = metrics.queuedAt();
+        
+        if (queuedAt != 0)
+        {
+            handlers.Metrics.Triggers.incrementAndGet();
+        }
+        
+        for (EventHandlerReference handler : handlers.Inline)
+        {
+            invokeHandler(handler, event, queuedAt);
+        }
+        
+        for (EventHandlerReference handler : handlers.Async)
+        {
+            invokeHandler(handler, event, queuedAt);
+        }
+        
+        for (EventHandlerReference handler : handlers.Coalesced)
+        {
+            invokeHandler(handler, event, queuedAt);
+        }
+    }
+    
+    
+    /**
+     * Run a task the same way the handler calls of this aggregator are run
+     * (so it is subject to its dispatch queue, if there is one).
+     * 
+     * @param       task                    The task. If it is a DispatchQueue.DroppableTask,
+     *                                      it is notified if the queue drops it.
+     */
+    public void execute(Runnable task)
+    {
+        dispatch(task, null);
+    }
+    
+    
+    /**
+     * Check if any handler would receive the events of a certain class
+     * (including the handlers of its supertypes).
+     * 
+     * @param       eventClass              The concrete event class.
+     * @return      True if there is at least one handler.
+     */
+    public boolean hasHandlers(Class<? extends Event> eventClass)
+    {
+        ResolvedHandlers handlers = resolvedHandlersOf(eventClass);
+        
+        return handlers.Inline.length > 0 || handlers.Async.length > 0 || handlers.Coalesced.length > 0;
+    }
+    
+    
+    /**
+     * Get notified whenever the registrations of this aggregator change.
+     * 
+     * @param       listener                The listener.
+     */
+    public void addRegistrationListener(RegistrationListener listener)
+    {
+        registrationListeners.add(listener);
+    }
+    
+    
+    /**
+     * Stop notifying a listener.
+     * 
+     * @param       listener                The listener.
+     */
+    public void removeRegistrationListener(RegistrationListener listener)
+    {
+        registrationListeners.remove(listener);
+    }
+    
+    
+    /**
+     * Release any resources (like threads) that this aggregator uses.
+     * Events that have already been triggered will still be handled.
+     * (This does nothing by default)
+     */
+    public void shutdown()
+    {
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The bounded queue of this aggregator (to watch its depth),
+     *              or null if the handler calls are not limited.
+     */
+    public DispatchQueue getDispatchQueue()
+    {
+        return dispatchQueue;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The dispatch metrics of this aggregator. 
+     *              (Enable them to record the handler timings)
+     */
+    public DispatchMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    
+    /**
+     * Send the (asynchronous) handlers of an event to the executor.
+     * Backends that do not use an executor override this.
+     * 
+     * @param       handlers                The handlers, in registration order.
+     * @param       event                   The event.
+     * @param       queuedAt                The time the event was triggered at, 
+     *                                      or 0 if the calls should not be timed.
+     */
+    void dispatchHandlers(EventHandlerReference[] handlers, Event event, long queuedAt)
+    {
+        if (dispatchMode == DispatchMode.PER_EVENT)
+        {
+            // a single (recycled) task that runs all handlers
+            dispatch(TASK_POOL.get().init(handlers, event, queuedAt), event);
+            return;
+        }
+        
+        for (EventHandlerReference handler : handlers)
+        {
+            // for each handler in the handler collection,
+            // try to invoke the handler with
+            // the object that holds it and the event
+            dispatch(new Invokable(handler, event, queuedAt), event);
+        }
+    }
+    
+    
+    /**
+     * Send a handler task to the executor.
+     */
+    private void dispatch(Runnable task, Event event)
+    {
+        if (dispatchQueue == null)
+        {
+            executor.execute(task);
+            return;
+        }
+        
+        // the bounded queue may want to throttle the channel that the event came from
+        Channel origin = (event instanceof Message) ? ((Message) event).getChannel() : null;
+        dispatchQueue.execute(task, origin);
+    }
+    
+    
+    /**
+     * Get the key that determines which pending events are replaced by an event.
+     */
+    private static Object coalescingKeyOf(Event event)
+    {
+        Object key = null;
+        
+        if (event instanceof CoalescableEvent)  { key = ((CoalescableEvent) event).getCoalescingKey(); }
+        else if (event instanceof Message)      { key = ((Message) event).getChannel(); }
+        
+        return (key == null) ? NO_KEY : key;
+    }
+    
+    
+    /**
+     * Get the events that are waiting for a coalescing handler.
+     */
+    private static ConcurrentMap<Object, Event> pendingEventsOf(EventHandlerReference handler, Class<?> eventClass)
+    {
+        ConcurrentMap<Object, Event> pending = handler.PendingEvents.get(eventClass);
+        
+        if (pending == null)
+        {
+            pending = new ConcurrentHashMap<>();
+            ConcurrentMap<Object, Event> existing = handler.PendingEvents.putIfAbsent(eventClass, pending);
+            
+            if (existing != null) { pending = existing; }
+        }
+        
+        return pending;
+    }
+    
+    
+    /**
+     * Look for the handler methods of an object.
+     * 
+     * @param       handlerImpl             The object that holds the handler methods.
+     * @param       result                  The list that the new associations are added to.
+     */
+    private static void collectHandlers(final Object handlerImpl, final List<EventHandlerReference> result)
+    {
+        // use the dispatcher generated at compile time if there is one
+        EventDispatcher dispatcher = DISPATCHERS.get(handlerImpl.getClass());
+        
+        if (dispatcher != NO_DISPATCHER)
+        {
+            dispatcher.bind(handlerImpl, new EventDispatcher.Registry()
+            {
+                @Override
+                public void add(Class<? extends Event> eventClass, String methodName, boolean inline, boolean coalesce, EventHandlerInvoker invoker)
+                {
+                    EventHandlerReference handler = new EventHandlerReference();
+                    handler.HandlerName = handlerImpl.getClass().getName() + "." + methodName;
+                    handler.HandlerObject = handlerImpl;
+                    handler.HandlerInvoker = invoker;
+                    handler.Inline = inline;
+                    handler.Coalesce = coalesce;
+                    handler.EventClass = eventClass;
+                    
+                    result.add(handler);
+                }
+            });
+            
+            return;
+        }
+        
         // get all the declared methods of the object with the handler implementations
         // so we can look for annotations
         Method[] methods = handlerImpl.getClass().getMethods();
@@ -117,7 +890,9 @@ public class EventAggregator
             // failchecks first
             
             // check if the method has an annotation of type EventHandler
-            if (method.getAnnotation(Event.Handler.class) == null) { continue; }
+            Event.Handler annotation = method.getAnnotation(Event.Handler.class);
+            
+            if (annotation == null) { continue; }
 
             Class<?>[] params = method.getParameterTypes();
             
@@ -134,93 +909,273 @@ public class EventAggregator
             
             // lets build the EventHandlerReference now, used to store the handler its containing object
             EventHandlerReference handler = new EventHandlerReference();
-            handler.HandlerMethod = method;
+            handler.HandlerName = handlerImpl.getClass().getName() + "." + method.getName();
             handler.HandlerObject = handlerImpl;
+            handler.HandlerInvoker = createInvoker(handlerImpl, method);
+            handler.Inline = annotation.inline();
+            handler.Coalesce = annotation.coalesce();
             
             // check wich event class we are looking for...
-            Class<? extends Event> clazz = (Class<? extends Event>)params[0];
-
-            // we want to add the handler methods to a list of methods that have the same
-            // signature, and thus handle the same event
-            // so try to get the list
-            List<EventHandlerReference> list = eventMapping.get(clazz);
-
-            if (list == null)
-            {
-                // if there is no entry yet, create a new handler list for this event
-                list = new CopyOnWriteArrayList<>();
-                eventMapping.put(clazz, list);
-            }
-
-            // finally add the handler reference
-            list.add(handler);
+            handler.EventClass = params[0].asSubclass(Event.class);
+            
+            result.add(handler);
+        }
+    }
+    
+    
+    /**
+     * Try to load the generated dispatcher of a handler class.
+     * 
+     * @param       type                    The class of the handler object.
+     * @return      The dispatcher, or NO_DISPATCHER if there is none.
+     */
+    private static EventDispatcher loadDispatcher(Class<?> type)
+    {
+        try
+        {
+            Class<?> dispatcherClass = Class.forName(type.getName() + EventDispatcher.CLASS_SUFFIX, true, type.getClassLoader());
+            
+            return dispatcherClass.asSubclass(EventDispatcher.class).getDeclaredConstructor().newInstance();
+        }
+        catch (ClassNotFoundException ex)
+        {
+            // not generated, we need to use reflection
+            return NO_DISPATCHER;
         }
+        catch (ReflectiveOperationException | ClassCastException | LinkageError ex)
+        {
+            LOGGER.warn("Could not load the generated event dispatcher of a handler class.", ex);
+            return NO_DISPATCHER;
+        }
+    }
+    
+    
+    /**
+     * Add a value to the list of a key, creating the list if necessary.
+     */
+    private static <K> void addToList(Map<K, List<EventHandlerReference>> map, K key, EventHandlerReference value)
+    {
+        List<EventHandlerReference> list = map.get(key);
         
-        return this;
+        if (list == null)
+        {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        
+        list.add(value);
     }
     
     
     /**
-     * Unregister all handlers implemented within the given object
+     * Get the (cached) handlers of a concrete event class.
+     */
+    private ResolvedHandlers resolvedHandlersOf(Class<?> eventClass)
+    {
+        // read the cache before the registrations, see invalidateResolvedMapping
+        Map<Class<?>, ResolvedHandlers> resolved = resolvedMapping;
+        ResolvedHandlers handlers = resolved.get(eventClass);
+        
+        if (handlers == null)
+        {
+            handlers = resolveHandlers(eventClass);
+            resolved.put(eventClass, handlers);
+        }
+        
+        return handlers;
+    }
+    
+    
+    /**
+     * Collect the handlers of an event class and all its supertypes.
      * 
-     * @param       handlerImpl             The object that holds different kind of handlers.
+     * @param       eventClass              The concrete event class.
+     * @return      The inline and async handlers, each in the order they were registered.
      */
-    public void unregister(Object handlerImpl)
+    private ResolvedHandlers resolveHandlers(Class<?> eventClass)
     {
-        // its kinda tricky to remove stuff from our mapping, because we cant simply
-        // look up an event. the values of our hashmap consist of lists of the associations
-        // that we want to remove, so me must iterate those lists and find the values, then we must remove them from the lists
+        // walk the class hierarchy, including all interfaces
+        Set<Class<?>> types = new LinkedHashSet<>();
+        Deque<Class<?>> open = new ArrayDeque<>();
+        open.add(eventClass);
         
-        List<EventHandlerReference> found = new ArrayList<>();
+        while (!open.isEmpty())
+        {
+            Class<?> type = open.poll();
+            
+            if (!types.add(type)) { continue; }
+            
+            if (type.getSuperclass() != null) { open.add(type.getSuperclass()); }
+            open.addAll(Arrays.asList(type.getInterfaces()));
+        }
+        
+        List<EventHandlerReference> inline = new ArrayList<>();
+        List<EventHandlerReference> async = new ArrayList<>();
+        List<EventHandlerReference> coalesced = new ArrayList<>();
+        
+        boolean isCoalescable = CoalescableEvent.class.isAssignableFrom(eventClass);
         
-        // iterate trough the dictionary values, getting a list of associations
-        for (List<EventHandlerReference> list: eventMapping.values())
+        for (Class<?> type : types)
         {
-            // now iterate through the associations, and search for the object that implements
-            // the handlers and that equals the one we have been given
-            for (EventHandlerReference handler: list)
-            {
-                if (handler.HandlerObject.equals(handlerImpl))
-                {
-                    // we've found one of the associations that we want to remove.
-                    // temporarily save it...
-                    found.add(handler);
-                }
-            }
+            EventHandlerReference[] list = eventMapping.get(type);
             
-             // remove all those associations that we found
-            for (EventHandlerReference handler: found)
+            if (list == null) { continue; }
+            
+            for (EventHandlerReference handler : list)
             {
-                list.remove(handler);
+                if (handler.Inline)                             { inline.add(handler); }
+                else if (handler.Coalesce || isCoalescable)     { coalesced.add(handler); }
+                else                                            { async.add(handler); }
             }
-            
-            // clear up the list that we are using to temporarily save associations
-            // because we'll simply re-use it for the next hashmap value
-            found.clear();
         }
+        
+        ResolvedHandlers result = new ResolvedHandlers();
+        result.Inline = sortedArray(inline);
+        result.Async = sortedArray(async);
+        result.Coalesced = sortedArray(coalesced);
+        result.Metrics = metrics.forEvent(eventClass);
+        
+        return result;
     }
     
     
     /**
-     * Trigger an event globally; the EventAggregator will try to distribute it to all 
-     * registered handler methods
+     * Convert a list of handlers to an array, in the order of their registration.
+     */
+    private static EventHandlerReference[] sortedArray(List<EventHandlerReference> list)
+    {
+        if (list.isEmpty()) { return NO_HANDLERS; }
+        
+        EventHandlerReference[] result = list.toArray(new EventHandlerReference[list.size()]);
+        Arrays.sort(result, REGISTRATION_ORDER);
+        
+        return result;
+    }
+    
+    
+    /**
+     * Drop all resolved handler lists.
      * 
-     * @param       event                   The event that will be published on this event-aggregator
+     * This must be called after the registrations changed. Since a triggering thread
+     * reads the cache reference before it reads the registrations, anything it 
+     * resolves from outdated registrations ends up in the dropped cache.
      */
-    public void triggerEvent(Event event)
+    private void invalidateResolvedMapping()
     {
-        // get the listeners of the event
-        List<EventHandlerReference> handlers = eventMapping.get(event.getClass());
+        resolvedMapping = new ConcurrentHashMap<>();
+    }
+    
+    
+    /**
+     * Tell the listeners which event classes got other handlers.
+     * (Called without the registration lock, so listeners may take their time)
+     */
+    private void notifyRegistrationListeners(Set<Class<? extends Event>> eventClasses)
+    {
+        if (registrationListeners.isEmpty()) { return; }
         
-        // failcheck
-        if (handlers == null) { return; }
+        Set<Class<? extends Event>> changed = Collections.unmodifiableSet(eventClasses);
         
-        for (EventHandlerReference handler: handlers)
+        for (RegistrationListener listener : registrationListeners)
         {
-            // for each handler in the handler collection,
-            // try to invoke the handler with
-            // the object that holds it and the event
-            executor.execute(new Invokable(handler, event));
+            listener.registrationsChanged(this, changed);
+        }
+    }
+    
+    
+    /**
+     * Keep a reference counted event (like a pooled message) alive 
+     * until a queued handler call is done.
+     */
+    static Event retain(Event event)
+    {
+        return ReferenceCountUtil.retain(event);
+    }
+    
+    
+    /**
+     * Release a reference counted event after a queued handler call.
+     */
+    static void release(Event event)
+    {
+        try
+        {
+            ReferenceCountUtil.release(event);
+        }
+        catch (RuntimeException ex)
+        {
+            LOGGER.warn("Could not release an event.", ex);
+        }
+    }
+    
+    
+    /**
+     * Call a handler with an event, logging any failure.
+     * 
+     * @param       handler                 The handler.
+     * @param       event                   The event.
+     * @param       queuedAt                The time the event was triggered at, 
+     *                                      or 0 if the call should not be timed.
+     */
+    static void invokeHandler(EventHandlerReference handler, Event event, long queuedAt)
+    {
+        long start = (queuedAt == 0) ? 0 : System.nanoTime();
+        
+        try 
+        { 
+            handler.HandlerInvoker.invoke(event); 
+        } 
+        catch (Throwable ex) 
+        { 
+            handler.Metrics.Failures.incrementAndGet();
+            LOGGER.warn("Could not execute an event handler", ex); 
+        }
+        
+        if (start != 0)
+        {
+            handler.Metrics.Wait.record(start - queuedAt);
+            handler.Metrics.Execution.record(System.nanoTime() - start);
+        }
+    }
+    
+    
+    /**
+     * Build a typed invoker for a handler method, so we dont need
+     * to use Method.invoke whenever an event is triggered.
+     * 
+     * @param       handlerImpl             The object that holds the handler method.
+     * @param       method                  The handler method.
+     * @return      The invoker. Falls back to reflection if no method handle can be created.
+     */
+    private static EventHandlerInvoker createInvoker(Object handlerImpl, Method method)
+    {
+        try
+        {
+            // handlers may be declared by non-public (e.g. anonymous) classes
+            method.setAccessible(true);
+        }
+        catch (RuntimeException ex)
+        {
+            LOGGER.debug("Could not make an event handler accessible.", ex);
+        }
+        
+        try
+        {
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            
+            if (!Modifier.isStatic(method.getModifiers()))
+            {
+                handle = handle.bindTo(handlerImpl);
+            }
+            
+            // this will add the cast to the actual event type and drop any return value
+            return new MethodHandleInvoker(handle.asType(INVOKER_TYPE));
+        }
+        catch (IllegalAccessException | RuntimeException ex)
+        {
+            LOGGER.debug("Could not create a method handle for an event handler, using reflection instead.", ex);
+            
+            return new ReflectiveInvoker(handlerImpl, method);
         }
     }
 }
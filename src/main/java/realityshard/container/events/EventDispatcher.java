@@ -0,0 +1,56 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+
+/**
+ * Knows all the handler methods of a certain class of handler objects.
+ * 
+ * Implementations are generated at compile time by the EventHandlerProcessor
+ * (named like the handler class, plus "$$EventDispatcher"). If the event-aggregator
+ * finds such a class for an object that is registered, it will use it instead 
+ * of looking for the handler methods with reflection.
+ * 
+ * @author _rusty
+ */
+public interface EventDispatcher
+{
+    
+    /**
+     * The suffix of the names of generated dispatcher classes
+     */
+    public static final String CLASS_SUFFIX = "$$EventDispatcher";
+    
+    
+    /**
+     * Add all the handlers of an object to the registry.
+     * 
+     * @param       handlerImpl             The object that holds the handler methods.
+     *                                      (Has exactly the class this dispatcher was generated for)
+     * @param       registry                The registry of the event-aggregator.
+     */
+    public void bind(Object handlerImpl, Registry registry);
+    
+    
+    /**
+     * Receives the handlers of an object.
+     * 
+     * @author _rusty
+     */
+    public interface Registry
+    {
+        
+        /**
+         * Add a handler.
+         * 
+         * @param       eventClass              The event type of the handler parameter.
+         * @param       methodName              The name of the handler method.
+         * @param       inline                  See Event.Handler.inline()
+         * @param       coalesce                See Event.Handler.coalesce()
+         * @param       invoker                 Calls the handler method.
+         */
+        public void add(Class<? extends Event> eventClass, String methodName, boolean inline, boolean coalesce, EventHandlerInvoker invoker);
+    }
+}
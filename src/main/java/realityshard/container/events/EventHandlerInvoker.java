@@ -0,0 +1,28 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+
+/**
+ * A typed, pre-bound call of a single event handler method.
+ * 
+ * The event-aggregator produces one of these for every handler method it finds
+ * when an object is registered, so that triggering an event does not need
+ * to go through the reflection API anymore.
+ * 
+ * @author _rusty
+ */
+public interface EventHandlerInvoker
+{
+    
+    /**
+     * Call the handler method with the given event.
+     * 
+     * @param       event                   The event that will be passed to the handler.
+     *                                      The caller makes sure that it has the right type.
+     * @throws      Throwable               Anything that the handler method throws.
+     */
+    public void invoke(Event event) throws Throwable;
+}
@@ -0,0 +1,190 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+
+/**
+ * Generates an EventDispatcher for each class that declares handler methods.
+ * 
+ * The dispatchers call the handler methods directly, so the event-aggregator
+ * neither needs to look for the methods nor call them with reflection.
+ * The handler methods are found just like the event-aggregator would find 
+ * them at runtime: All public methods of the class (including inherited ones)
+ * that are annotated with Event.Handler.
+ * 
+ * Subclasses that do not declare any handler methods themselves get no dispatcher.
+ * Neither do classes that cannot be accessed from their
+ * package (private, local or anonymous classes), or for abstract classes.
+ * The event-aggregator will use reflection for those.
+ * 
+ * (Used automatically by javac when this library is on the classpath)
+ * 
+ * @author _rusty
+ */
+public class EventHandlerProcessor extends AbstractProcessor
+{
+    
+    private static final String INDENT = "    ";
+    
+    
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        return Collections.singleton(Event.Handler.class.getCanonicalName());
+    }
+    
+    
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+    
+    
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        // get the classes that declare handlers
+        Set<TypeElement> handlerClasses = new LinkedHashSet<>();
+        
+        for (Element element : roundEnv.getElementsAnnotatedWith(Event.Handler.class))
+        {
+            if (element.getKind() == ElementKind.METHOD)
+            {
+                handlerClasses.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        
+        for (TypeElement handlerClass : handlerClasses)
+        {
+            if (!canGenerateFor(handlerClass)) { continue; }
+            
+            try
+            {
+                generate(handlerClass);
+            }
+            catch (IOException ex)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not generate the event dispatcher: " + ex, handlerClass);
+            }
+        }
+        
+        // other processors may want to see the annotation as well
+        return false;
+    }
+    
+    
+    /**
+     * Check if the generated dispatcher (that lives in the same package)
+     * will be able to use the class.
+     */
+    private boolean canGenerateFor(TypeElement handlerClass)
+    {
+        if (handlerClass.getKind() != ElementKind.CLASS) { return false; }
+        if (handlerClass.getModifiers().contains(Modifier.ABSTRACT)) { return false; }
+        
+        Element current = handlerClass;
+        
+        while (current instanceof TypeElement)
+        {
+            TypeElement type = (TypeElement) current;
+            
+            if (type.getModifiers().contains(Modifier.PRIVATE)) { return false; }
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) { return false; }
+            
+            current = type.getEnclosingElement();
+        }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Write the dispatcher source file of a class.
+     */
+    private void generate(TypeElement handlerClass) throws IOException
+    {
+        String packageName = processingEnv.getElementUtils().getPackageOf(handlerClass).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(handlerClass).toString();
+        String simpleName = binaryName.substring(binaryName.lastIndexOf('.') + 1) + EventDispatcher.CLASS_SUFFIX;
+        String handlerType = processingEnv.getTypeUtils().erasure(handlerClass.asType()).toString();
+        
+        TypeMirror eventType = processingEnv.getElementUtils().getTypeElement(Event.class.getCanonicalName()).asType();
+        
+        StringBuilder src = new StringBuilder();
+        
+        src.append("// Generated by ").append(EventHandlerProcessor.class.getName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) { src.append("package ").append(packageName).append(";\n"); }
+        src.append("\n");
+        src.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        src.append("public final class ").append(simpleName).append(" implements ").append(EventDispatcher.class.getCanonicalName()).append("\n");
+        src.append("{\n");
+        src.append(INDENT).append("@Override\n");
+        src.append(INDENT).append("public void bind(Object handlerImpl, ").append(EventDispatcher.Registry.class.getCanonicalName()).append(" registry)\n");
+        src.append(INDENT).append("{\n");
+        src.append(INDENT).append(INDENT).append("final ").append(handlerType).append(" handler = (").append(handlerType).append(") handlerImpl;\n");
+        
+        // the public methods, including the inherited ones (like Class.getMethods)
+        for (Element member : processingEnv.getElementUtils().getAllMembers(handlerClass))
+        {
+            if (member.getKind() != ElementKind.METHOD) { continue; }
+            if (!member.getModifiers().contains(Modifier.PUBLIC)) { continue; }
+            
+            Event.Handler annotation = member.getAnnotation(Event.Handler.class);
+            
+            if (annotation == null) { continue; }
+            
+            ExecutableElement method = (ExecutableElement) member;
+            
+            if (method.getParameters().size() != 1 
+                    || !processingEnv.getTypeUtils().isAssignable(method.getParameters().get(0).asType(), eventType))
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "The method is annotated as EventHandler but doesnt follow the signature.", method);
+                continue;
+            }
+            
+            String paramType = processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType()).toString();
+            String target = method.getModifiers().contains(Modifier.STATIC) ? handlerType : "handler";
+            
+            src.append("\n");
+            src.append(INDENT).append(INDENT).append("registry.add(").append(paramType).append(".class, \"").append(method.getSimpleName()).append("\", ")
+               .append(annotation.inline()).append(", ").append(annotation.coalesce()).append(", new ").append(EventHandlerInvoker.class.getCanonicalName()).append("()\n");
+            src.append(INDENT).append(INDENT).append("{\n");
+            src.append(INDENT).append(INDENT).append(INDENT).append("@Override\n");
+            src.append(INDENT).append(INDENT).append(INDENT).append("public void invoke(").append(Event.class.getCanonicalName()).append(" event) throws Throwable\n");
+            src.append(INDENT).append(INDENT).append(INDENT).append("{\n");
+            src.append(INDENT).append(INDENT).append(INDENT).append(INDENT).append(target).append(".").append(method.getSimpleName()).append("((").append(paramType).append(") event);\n");
+            src.append(INDENT).append(INDENT).append(INDENT).append("}\n");
+            src.append(INDENT).append(INDENT).append("});\n");
+        }
+        
+        src.append(INDENT).append("}\n");
+        src.append("}\n");
+        
+        String fileName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        
+        try (Writer writer = processingEnv.getFiler().createSourceFile(fileName, handlerClass).openWriter())
+        {
+            writer.write(src.toString());
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An event aggregator that does not use an executor, but a preallocated ring
+ * buffer with its own consumer thread.
+ * 
+ * Triggering an event claims the next slot of the ring (by sequence number),
+ * fills it with the event and the handlers, and publishes it. The consumer thread
+ * follows the published sequence and runs all handlers of each slot, taking 
+ * as many slots as are available in one batch. The slots are reused, so 
+ * there is no allocation per event.
+ * 
+ * Handlers are called one after another, in the order the events were triggered.
+ * If the ring is full, the triggering threads wait until the consumer catches up.
+ * Call shutdown() to stop the consumer thread when the aggregator is not needed anymore.
+ * 
+ * @author _rusty
+ */
+public class RingBufferEventAggregator extends EventAggregator
+{
+    
+    /**
+     * The default amount of slots (must be a power of two)
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    
+    /**
+     * The maximum amount of slots that the consumer handles in one go
+     */
+    public static final int BATCH_SIZE = 256;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(RingBufferEventAggregator.class);
+    
+    // the claimed sequence is mirrored below this once the ring has been shut down
+    private static final long CLOSED = -1;
+    
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactory()
+    {
+        private final AtomicLong count = new AtomicLong();
+        
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "event-ring-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    
+    
+    // Storage class, the reused content of the ring
+    private static final class Slot
+    {
+        public EventHandlerReference[] Handlers;
+        public Event Parameter;
+        public long QueuedAt;
+        public Runnable Task;
+    }
+    
+    
+    // The ring buffer and its consumer
+    private static final class Ring implements Executor, Runnable
+    {
+        private final Slot[] slots;
+        private final int mask;
+        
+        // the sequence of each slot, once it has been published
+        private final AtomicLongArray published;
+        
+        // the next sequence that will be claimed by a producer.
+        // after shutdown, this is CLOSED minus the first sequence that
+        // could not be claimed anymore (see drainLimit)
+        private final AtomicLong claimed = new AtomicLong(0);
+        
+        // the last sequence that the consumer is done with
+        private final AtomicLong consumed = new AtomicLong(-1);
+        
+        // events triggered by the handlers themselves (only used by the consumer)
+        private final Queue<Slot> local = new ArrayDeque<>();
+        
+        private volatile boolean sleeping = false;
+        
+        // final, so producers always see it when they wake the consumer up
+        private final Thread consumer;
+        
+        
+        public Ring(int size, ThreadFactory threadFactory)
+        {
+            if (size < 1 || Integer.bitCount(size) != 1) { throw new IllegalArgumentException("The buffer size must be a power of two."); }
+            
+            slots = new Slot[size];
+            mask = size - 1;
+            published = new AtomicLongArray(size);
+            
+            for (int i = 0; i < size; i++)
+            {
+                slots[i] = new Slot();
+                published.set(i, -1);
+            }
+            
+            // not started yet, see start
+            consumer = threadFactory.newThread(this);
+        }
+        
+        
+        public void start()
+        {
+            consumer.start();
+        }
+        
+        
+        @Override
+        public void execute(Runnable task)
+        {
+            publish(null, null, 0, task);
+        }
+        
+        
+        public void publish(EventHandlerReference[] handlers, Event event, long queuedAt, Runnable task)
+        {
+            if (Thread.currentThread() == consumer)
+            {
+                // the consumer must never wait for itself
+                Slot slot = new Slot();
+                slot.Handlers = handlers;
+                slot.Parameter = (event == null) ? null : retain(event);
+                slot.QueuedAt = queuedAt;
+                slot.Task = task;
+                local.add(slot);
+                return;
+            }
+            
+            long sequence;
+            
+            do
+            {
+                sequence = claimed.get();
+                
+                if (sequence < 0)
+                {
+                    LOGGER.warn("Triggered an event on a ring buffer that has been shut down.");
+                    return;
+                }
+            }
+            while (!claimed.compareAndSet(sequence, sequence + 1));
+            
+            // wait until the consumer is done with the slot
+            // (it handles every claimed sequence, even after shutdown, so this ends)
+            while (sequence - slots.length > consumed.get())
+            {
+                LockSupport.parkNanos(1000);
+            }
+            
+            Slot slot = slots[(int) sequence & mask];
+            slot.Handlers = handlers;
+            slot.Parameter = (event == null) ? null : retain(event);
+            slot.QueuedAt = queuedAt;
+            slot.Task = task;
+            
+            published.set((int) sequence & mask, sequence);
+            
+            if (sleeping)
+            {
+                LockSupport.unpark(consumer);
+            }
+        }
+        
+        
+        public void shutdown()
+        {
+            long sequence;
+            
+            // no new claims from now on, but everything that has been claimed
+            // will still be published and handled
+            do
+            {
+                sequence = claimed.get();
+                
+                if (sequence < 0) { return; }
+            }
+            while (!claimed.compareAndSet(sequence, CLOSED - sequence));
+            
+            LockSupport.unpark(consumer);
+        }
+        
+        
+        /**
+         * Getter.
+         * 
+         * @return      The first sequence that will never be published,
+         *              or -1 if the ring is still running.
+         */
+        private long drainLimit()
+        {
+            long sequence = claimed.get();
+            
+            return (sequence < 0) ? CLOSED - sequence : -1;
+        }
+        
+        
+        @Override
+        public void run()
+        {
+            long next = 0;
+            
+            while (true)
+            {
+                // find the end of the available batch
+                long end = next;
+                
+                while (end - next < BATCH_SIZE && published.get((int) end & mask) == end)
+                {
+                    end++;
+                }
+                
+                if (end == next)
+                {
+                    long limit = drainLimit();
+                    
+                    if (limit >= 0 && next >= limit) { return; }
+                    
+                    await(next);
+                    continue;
+                }
+                
+                for (long sequence = next; sequence < end; sequence++)
+                {
+                    Slot slot = slots[(int) sequence & mask];
+                    
+                    runSlot(slot);
+                    
+                    // the slot may now be reused
+                    slot.Handlers = null;
+                    slot.Parameter = null;
+                    slot.Task = null;
+                    
+                    while (!local.isEmpty())
+                    {
+                        runSlot(local.poll());
+                    }
+                }
+                
+                consumed.set(end - 1);
+                next = end;
+            }
+        }
+        
+        
+        private void runSlot(Slot slot)
+        {
+            if (slot.Task != null)
+            {
+                try
+                {
+                    slot.Task.run();
+                }
+                catch (Throwable ex)
+                {
+                    // the consumer must not die, or the producers would wait forever
+                    LOGGER.warn("A task of a ring buffer failed.", ex);
+                }
+                return;
+            }
+            
+            try
+            {
+                for (EventHandlerReference handler : slot.Handlers)
+                {
+                    invokeHandler(handler, slot.Parameter, slot.QueuedAt);
+                }
+            }
+            finally
+            {
+                release(slot.Parameter);
+            }
+        }
+        
+        
+        private void await(long sequence)
+        {
+            // spin a little bit first, events usually come in bursts
+            for (int i = 0; i < 100; i++)
+            {
+                if (published.get((int) sequence & mask) == sequence) { return; }
+                
+                Thread.yield();
+            }
+            
+            sleeping = true;
+            
+            // check again, a producer might not have seen the flag.
+            // after shutdown, only wait for sequences that have been claimed
+            long limit = drainLimit();
+            
+            if ((limit < 0 || sequence < limit) && published.get((int) sequence & mask) != sequence)
+            {
+                LockSupport.park(this);
+            }
+            
+            sleeping = false;
+        }
+    }
+    
+    
+    private final Ring ring;
+    
+    
+    /**
+     * Constructor.
+     */
+    public RingBufferEventAggregator()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       bufferSize              The amount of slots of the ring (a power of two)
+     */
+    public RingBufferEventAggregator(int bufferSize)
+    {
+        this(bufferSize, DEFAULT_THREAD_FACTORY);
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       bufferSize              The amount of slots of the ring (a power of two)
+     * @param       threadFactory           Produces the consumer thread.
+     */
+    public RingBufferEventAggregator(int bufferSize, ThreadFactory threadFactory)
+    {
+        this(new Ring(bufferSize, threadFactory));
+    }
+    
+    
+    /**
+     * Constructor.
+     */
+    private RingBufferEventAggregator(Ring ring)
+    {
+        // anything that still needs a task (like coalescing handlers) 
+        // goes through the ring as well
+        super(ring, DispatchMode.PER_EVENT);
+        
+        this.ring = ring;
+        ring.start();
+    }
+    
+    
+    /**
+     * Stop the consumer thread, after it handled all events that have
+     * already been triggered (including those of producers that are still
+     * waiting for a free slot). Events triggered afterwards are dropped.
+     */
+    @Override
+    public void shutdown()
+    {
+        ring.shutdown();
+    }
+    
+    
+    /**
+     * Put the event and its handlers into the next slot of the ring.
+     */
+    @Override
+    void dispatchHandlers(EventHandlerReference[] handlers, Event event, long queuedAt)
+    {
+        ring.publish(handlers, event, queuedAt, null);
+    }
+}
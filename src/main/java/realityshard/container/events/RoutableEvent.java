@@ -0,0 +1,29 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+
+/**
+ * An event (usually a message of a client that is not assigned to a game app yet)
+ * that carries a key, like a session token or a map id, which identifies the
+ * game app instance it belongs to.
+ * 
+ * If an instance registered a route for that key with its meta context, the event
+ * will only be sent to that instance, instead of to all instances. 
+ * (See MetaGameAppContext.addRoute)
+ * 
+ * @author _rusty
+ */
+public interface RoutableEvent extends Event
+{
+    
+    /**
+     * Getter.
+     * 
+     * @return      The routing key of this event, or null if it has none.
+     *              (Keys are compared by equals/hashCode)
+     */
+    public Object getRoutingKey();
+}
@@ -0,0 +1,74 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+
+/**
+ * Triggered at every tick of a ticking game app, after all events that
+ * have been triggered since the last tick have been handled.
+ * 
+ * @author _rusty
+ */
+public final class TickEvent implements Event
+{
+    
+    private final long tick;
+    private final long intervalNanos;
+    private final long jitterNanos;
+    private final boolean previousOverrun;
+    
+    
+    public TickEvent(long tick, long intervalNanos, long jitterNanos, boolean previousOverrun)
+    {
+        this.tick = tick;
+        this.intervalNanos = intervalNanos;
+        this.jitterNanos = jitterNanos;
+        this.previousOverrun = previousOverrun;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The number of this tick (starting at 0)
+     */
+    public long getTick()
+    {
+        return tick;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The configured time between two ticks, in nanoseconds.
+     */
+    public long getIntervalNanos()
+    {
+        return intervalNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      How late this tick started, compared to its schedule, in nanoseconds.
+     */
+    public long getJitterNanos()
+    {
+        return jitterNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if the previous tick took longer than the interval.
+     */
+    public boolean isPreviousOverrun()
+    {
+        return previousOverrun;
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import realityshard.container.util.MpscLinkedQueue;
+
+
+/**
+ * An event aggregator that handles its events in fixed-rate ticks.
+ * 
+ * Events triggered between two ticks are buffered. At the start of each tick,
+ * all of them are handled in one batch (one after another, in the order they
+ * were triggered), followed by a TickEvent. Events that the handlers of that 
+ * batch trigger are handled along with the TickEvent, anything that the tick
+ * handlers trigger is handled in the next tick.
+ * (Inline handlers are still called immediately)
+ * 
+ * Ticks that take longer than the interval (overruns) and ticks that start late
+ * (jitter) are counted and can be read from this aggregator.
+ * 
+ * @author _rusty
+ */
+public class TickingEventAggregator extends EventAggregator
+{
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickingEventAggregator.class);
+    
+    
+    // Buffers the handler tasks between two ticks
+    private static final class TickBuffer implements Executor
+    {
+        private final MpscLinkedQueue<Runnable> tasks = new MpscLinkedQueue<>();
+        private volatile boolean closed = false;
+        
+        
+        @Override
+        public void execute(Runnable task)
+        {
+            tasks.offer(task);
+            
+            // closed meanwhile, so no tick would drop it anymore
+            // (a draining thread drops it itself, see drain)
+            if (closed && !Thread.holdsLock(this)) { discard(); }
+        }
+        
+        
+        /**
+         * Run all tasks that have been added before this was called.
+         * (Only called by the tick)
+         */
+        public synchronized void drain()
+        {
+            takeAll(true);
+            
+            // closed while the tasks were running (e.g. by one of them)
+            if (closed) { takeAll(false); }
+        }
+        
+        
+        /**
+         * Drop all buffered tasks, and any task that is added from now on.
+         */
+        public void close()
+        {
+            closed = true;
+            discard();
+        }
+        
+        
+        private synchronized void discard()
+        {
+            takeAll(false);
+        }
+        
+        
+        /**
+         * Take all tasks that have been added before this was called,
+         * and run them (until the buffer is closed) or drop them.
+         */
+        private void takeAll(boolean run)
+        {
+            Runnable marker = new Runnable() { @Override public void run() { } };
+            tasks.offer(marker);
+            
+            while (true)
+            {
+                Runnable task = tasks.poll();
+                
+                // a producer that offered before the marker may not have linked
+                // its node yet, so the marker is not visible either: wait for it
+                if (task == null)
+                {
+                    Thread.yield();
+                    continue;
+                }
+                
+                if (task == marker) { return; }
+                
+                if (!run || closed)
+                {
+                    drop(task);
+                    continue;
+                }
+                
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException ex)
+                {
+                    LOGGER.warn("A task of a tick failed.", ex);
+                }
+            }
+        }
+        
+        
+        /**
+         * Tell a task that it will not run, so it can release its event.
+         */
+        private static void drop(Runnable task)
+        {
+            if (!(task instanceof DispatchQueue.DroppableTask)) { return; }
+            
+            try
+            {
+                ((DispatchQueue.DroppableTask) task).dropped();
+            }
+            catch (RuntimeException ex)
+            {
+                LOGGER.warn("A dropped task of a tick failed.", ex);
+            }
+        }
+    }
+    
+    
+    private final TickBuffer buffer;
+    private final long intervalNanos;
+    private final ScheduledFuture<?> schedule;
+    
+    private final long startNanos;
+    private long tick = 0;
+    private boolean lastOverrun = false;
+    
+    private volatile long tickCount = 0;
+    private volatile long overrunCount = 0;
+    private volatile long lastJitterNanos = 0;
+    private volatile long maxJitterNanos = 0;
+    private volatile long lastDurationNanos = 0;
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       scheduler               The scheduler that runs the ticks.
+     * @param       interval                The time between two ticks.
+     * @param       unit                    The unit of the interval.
+     */
+    public TickingEventAggregator(ScheduledExecutorService scheduler, long interval, TimeUnit unit)
+    {
+        this(new TickBuffer(), scheduler, unit.toNanos(interval));
+    }
+    
+    
+    /**
+     * Constructor.
+     */
+    private TickingEventAggregator(TickBuffer buffer, ScheduledExecutorService scheduler, long intervalNanos)
+    {
+        super(buffer, DispatchMode.PER_EVENT);
+        
+        if (intervalNanos <= 0) { throw new IllegalArgumentException("The tick interval must be positive."); }
+        
+        this.buffer = buffer;
+        this.intervalNanos = intervalNanos;
+        this.startNanos = System.nanoTime() + intervalNanos;
+        
+        this.schedule = scheduler.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // anything that escapes would cancel all further ticks
+                try
+                {
+                    tick();
+                }
+                catch (Throwable ex)
+                {
+                    LOGGER.error("A tick failed!", ex);
+                }
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    
+    /**
+     * Stop ticking. Buffered events will not be handled anymore,
+     * they are released instead (and so are events triggered from now on)
+     */
+    @Override
+    public void shutdown()
+    {
+        schedule.cancel(false);
+        buffer.close();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of ticks done so far.
+     */
+    public long getTickCount()
+    {
+        return tickCount;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of ticks that took longer than the interval.
+     */
+    public long getOverrunCount()
+    {
+        return overrunCount;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      How late the last tick started, in nanoseconds.
+     */
+    public long getLastJitterNanos()
+    {
+        return lastJitterNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      How late the latest tick so far started, in nanoseconds.
+     */
+    public long getMaxJitterNanos()
+    {
+        return maxJitterNanos;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      How long the last tick took, in nanoseconds.
+     */
+    public long getLastDurationNanos()
+    {
+        return lastDurationNanos;
+    }
+    
+    
+    /**
+     * Do one tick: handle the buffered events, then the tick event.
+     * (The scheduler never runs this concurrently)
+     */
+    private void tick()
+    {
+        long start = System.nanoTime();
+        long jitter = Math.max(0, start - (startNanos + tick * intervalNanos));
+        
+        try
+        {
+            // handle everything that was triggered since the last tick
+            buffer.drain();
+            
+            // followed by the tick itself
+            triggerEvent(new TickEvent(tick, intervalNanos, jitter, lastOverrun));
+            buffer.drain();
+        }
+        finally
+        {
+            // count failed ticks too, so the next ones are measured correctly
+            finishTick(start, jitter);
+        }
+    }
+    
+    
+    private void finishTick(long start, long jitter)
+    {
+        long duration = System.nanoTime() - start;
+        lastOverrun = duration > intervalNanos;
+        
+        if (lastOverrun)
+        {
+            overrunCount++;
+            LOGGER.warn("A tick took longer than its interval. [tick {} ] [took {} ns ] [interval {} ns ]", new Object[] { tick, duration, intervalNanos });
+        }
+        
+        lastJitterNanos = jitter;
+        maxJitterNanos = Math.max(maxJitterNanos, jitter);
+        lastDurationNanos = duration;
+        tickCount = ++tick;
+    }
+}
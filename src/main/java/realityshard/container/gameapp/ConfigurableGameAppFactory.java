@@ -0,0 +1,25 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.gameapp;
+
+
+/**
+ * A game app factory that wants to change the default settings of the
+ * game apps that it produces.
+ * 
+ * @author _rusty
+ */
+public interface ConfigurableGameAppFactory extends GameAppFactory
+{
+    
+    /**
+     * Change the settings of the game apps of this factory.
+     * 
+     * (Only executed once at startup, before the server channel is produced)
+     * 
+     * @param       settings                The default settings. Modify these as needed.
+     */
+    public void configure(GameAppSettings settings);
+}
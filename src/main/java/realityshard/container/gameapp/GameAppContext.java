@@ -4,6 +4,7 @@
 
 package realityshard.container.gameapp;
 
+import io.netty.channel.EventLoop;
 import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.UUID;
@@ -85,7 +86,8 @@ public interface GameAppContext extends GameAppManager
         private EventAggregator aggregator;
         private String name = "";
         private GameAppManager manager;
-        private Handle<GameAppContext> parent;
+        private volatile Handle<GameAppContext> parent;
+        private EventLoop eventLoop;
 
         
         /**
@@ -104,6 +106,42 @@ public interface GameAppContext extends GameAppManager
             aggregator = new EventAggregator();
         }
         
+        
+        /**
+         * Constructor.
+         * 
+         * @param       name                The name of the game app
+         * @param       manager             The container-specific game app manager.
+         * @param       parent              The parent that created this context.
+         * @param       aggregator          The event aggregator of this context (configured
+         *                                  to use whatever executor it should use)
+         */
+        public Default(String name, GameAppManager manager, Handle<GameAppContext> parent, EventAggregator aggregator)
+        {
+            this.name = name;
+            this.manager = manager;
+            this.parent = parent;
+            this.aggregator = aggregator;
+        }
+        
+        
+        /**
+         * Constructor.
+         * 
+         * @param       name                The name of the game app
+         * @param       manager             The container-specific game app manager.
+         * @param       parent              The parent that created this context.
+         * @param       aggregator          The event aggregator of this context (configured
+         *                                  to use whatever executor it should use)
+         * @param       eventLoop           The home event loop of this context, or null.
+         *                                  (See GameAppSettings.setEventLoopAffinity)
+         */
+        public Default(String name, GameAppManager manager, Handle<GameAppContext> parent, EventAggregator aggregator, EventLoop eventLoop)
+        {
+            this(name, manager, parent, aggregator);
+            this.eventLoop = eventLoop;
+        }
+        
 
         @Override
         public void handleMessage(Message message) 
@@ -145,6 +183,29 @@ public interface GameAppContext extends GameAppManager
         {
             return parent;
         }
+        
+        
+        /**
+         * Getter.
+         * 
+         * @return      The home event loop of this context, or null if it has none.
+         */
+        public EventLoop getEventLoop()
+        {
+            return eventLoop;
+        }
+        
+        
+        /**
+         * Setter.
+         * Used when a prepared game app is handed out, see PoolableGameAppFactory.
+         * 
+         * @param       parent              The parent that created this context.
+         */
+        public void setParentContext(Handle<GameAppContext> parent)
+        {
+            this.parent = parent;
+        }
 
         
         /**
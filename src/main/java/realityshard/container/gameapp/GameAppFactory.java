@@ -46,7 +46,8 @@ public interface GameAppFactory
      * - Configure the child-channel preferences
      * - Bind to a port (and return the ChannelFuture)
      * 
-     * (Only executed once at startup)
+     * (Only executed once, at startup or, with lazy binding, 
+     * when the first game app is created. See GameAppSettings)
      * 
      * @param       bootstrap               Use this bootstrap to implement the method.
      * @return      The server channel for gameapps produced by this factory.
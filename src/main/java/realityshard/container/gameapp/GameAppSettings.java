@@ -0,0 +1,555 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.gameapp;
+
+import realityshard.container.ExecutorStrategy;
+import realityshard.container.events.DispatchQueue;
+import realityshard.container.events.EventAggregator;
+import realityshard.container.util.SerialExecutor;
+
+
+/**
+ * Holds the optional settings of the game apps produced by one factory.
+ * The defaults resemble the standard behaviour of the container.
+ * 
+ * Factories can change these settings by implementing the
+ * ConfigurableGameAppFactory interface.
+ * 
+ * (All setters are fluent methods)
+ *
+ * @author _rusty
+ */
+public class GameAppSettings
+{
+    
+    private boolean serialDispatch = false;
+    private int serialDispatchBatchSize = SerialExecutor.DEFAULT_BATCH_SIZE;
+    private EventAggregator.DispatchMode dispatchMode = EventAggregator.DispatchMode.PER_HANDLER;
+    private int dispatchQueueCapacity = 0;
+    private DispatchQueue.OverflowPolicy overflowPolicy = DispatchQueue.OverflowPolicy.BLOCK;
+    private int ringBufferSize = 0;
+    private long tickIntervalMillis = 0;
+    private boolean dispatchMetrics = false;
+    private ExecutorStrategy executorStrategy = new ExecutorStrategy.Global();
+    private int bossThreads = 0;
+    private int workerThreads = 0;
+    private int acceptors = 1;
+    private boolean lazyBinding = false;
+    private boolean eventLoopAffinity = false;
+    private boolean interestFiltering = false;
+    private int minPooledInstances = 0;
+    private int maxPooledInstances = 0;
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if the event handlers of a game app are run one after
+     *              another (actor mode), false if they may run concurrently.
+     */
+    public boolean isSerialDispatch()
+    {
+        return serialDispatch;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If enabled, each game app gets its own mailbox for event handler calls,
+     * which is drained by only one thread at a time. Handlers of the same
+     * game app will then be called in order and never concurrently, while
+     * different game apps still run in parallel.
+     * 
+     * @param       serialDispatch          True to enable the actor mode.
+     * @return      These settings.
+     */
+    public GameAppSettings setSerialDispatch(boolean serialDispatch)
+    {
+        this.serialDispatch = serialDispatch;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The maximum amount of handler calls that are run in one go,
+     *              when serial dispatch is enabled.
+     */
+    public int getSerialDispatchBatchSize()
+    {
+        return serialDispatchBatchSize;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * @param       serialDispatchBatchSize The maximum amount of handler calls that are run
+     *                                      before the thread is given back to the executor.
+     * @return      These settings.
+     */
+    public GameAppSettings setSerialDispatchBatchSize(int serialDispatchBatchSize)
+    {
+        if (serialDispatchBatchSize < 1) { throw new IllegalArgumentException("The batch size must be positive."); }
+        
+        this.serialDispatchBatchSize = serialDispatchBatchSize;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      Whether the event aggregators use one task per handler call
+     *              or one task per event.
+     */
+    public EventAggregator.DispatchMode getDispatchMode()
+    {
+        return dispatchMode;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * One task per event means less executor queue contention and less
+     * allocations, but the handlers of one event will no longer run concurrently.
+     * 
+     * @param       dispatchMode            The dispatch mode of the event aggregators.
+     * @return      These settings.
+     */
+    public GameAppSettings setDispatchMode(EventAggregator.DispatchMode dispatchMode)
+    {
+        this.dispatchMode = dispatchMode;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The maximum amount of queued handler calls per game app,
+     *              or 0 if the amount is not limited.
+     */
+    public int getDispatchQueueCapacity()
+    {
+        return dispatchQueueCapacity;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If set, each game app gets a bounded queue for its handler calls, and the
+     * overflow policy decides what happens if the queue is full.
+     * 
+     * @param       dispatchQueueCapacity   The maximum amount of queued handler calls per
+     *                                      game app, or 0 if the amount should not be limited.
+     * @return      These settings.
+     */
+    public GameAppSettings setDispatchQueueCapacity(int dispatchQueueCapacity)
+    {
+        if (dispatchQueueCapacity < 0) { throw new IllegalArgumentException("The capacity must not be negative."); }
+        
+        this.dispatchQueueCapacity = dispatchQueueCapacity;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      What happens if the dispatch queue of a game app is full.
+     */
+    public DispatchQueue.OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * @param       overflowPolicy          What happens if the dispatch queue of a game app is full.
+     *                                      (Only used if the capacity is limited)
+     * @return      These settings.
+     */
+    public GameAppSettings setOverflowPolicy(DispatchQueue.OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of slots of the ring buffer of each game app,
+     *              or 0 if the game apps use the executor.
+     */
+    public int getRingBufferSize()
+    {
+        return ringBufferSize;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If set, each game app gets a RingBufferEventAggregator with its own consumer
+     * thread instead of using the executor. The other dispatch settings are
+     * ignored in that case.
+     * 
+     * Warning: That is one platform thread per game app (plus the preallocated
+     * slots), for as long as the game app lives. Only use this for a few busy
+     * game apps, not for factories that create game apps per player or instance.
+     * 
+     * @param       ringBufferSize          The amount of slots (a power of two),
+     *                                      or 0 to use the executor.
+     * @return      These settings.
+     */
+    public GameAppSettings setRingBufferSize(int ringBufferSize)
+    {
+        if (ringBufferSize < 0 || (ringBufferSize > 0 && Integer.bitCount(ringBufferSize) != 1)) 
+        { 
+            throw new IllegalArgumentException("The buffer size must be a power of two."); 
+        }
+        
+        this.ringBufferSize = ringBufferSize;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The time between two ticks of each game app in milliseconds,
+     *              or 0 if the game apps dont tick.
+     */
+    public long getTickIntervalMillis()
+    {
+        return tickIntervalMillis;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If set, each game app gets a TickingEventAggregator that buffers the events 
+     * and handles them in one batch per tick, followed by a TickEvent.
+     * The ticks are run by the global executor. The other dispatch settings are
+     * ignored in that case.
+     * 
+     * @param       tickIntervalMillis      The time between two ticks in milliseconds,
+     *                                      or 0 to disable the tick mode.
+     * @return      These settings.
+     */
+    public GameAppSettings setTickIntervalMillis(long tickIntervalMillis)
+    {
+        if (tickIntervalMillis < 0) { throw new IllegalArgumentException("The tick interval must not be negative."); }
+        
+        this.tickIntervalMillis = tickIntervalMillis;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if the dispatch metrics of the game apps are recorded
+     *              and published via JMX.
+     */
+    public boolean isDispatchMetrics()
+    {
+        return dispatchMetrics;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If enabled, the event aggregator of each game app records how long its
+     * handlers wait and run, and its metrics are registered with the platform
+     * MBean server (as realityshard:type=EventAggregator,name=[app],uid=[uid]).
+     * The metrics can also be enabled at runtime, see EventAggregator.getMetrics()
+     * 
+     * @param       dispatchMetrics         True to record the dispatch metrics.
+     * @return      These settings.
+     */
+    public GameAppSettings setDispatchMetrics(boolean dispatchMetrics)
+    {
+        this.dispatchMetrics = dispatchMetrics;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The strategy that provides the executors of the game apps.
+     */
+    public ExecutorStrategy getExecutorStrategy()
+    {
+        return executorStrategy;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * Determines the threads that run the event handlers of the game apps (by
+     * default, the global executor of the host application). The strategy is shut
+     * down together with the container. Serial dispatch and dispatch queues still 
+     * apply on top of the executor, the tick and ring buffer modes ignore it.
+     * 
+     * @param       executorStrategy        The strategy, e.g. ExecutorStrategy.ThreadPerTask
+     *                                      for handlers that block on I/O.
+     * @return      These settings.
+     */
+    public GameAppSettings setExecutorStrategy(ExecutorStrategy executorStrategy)
+    {
+        if (executorStrategy == null) { throw new IllegalArgumentException("The executor strategy must not be null."); }
+        
+        this.executorStrategy = executorStrategy;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of threads of the dedicated boss group of the factory,
+     *              or 0 if it uses the shared group of the container.
+     */
+    public int getBossThreads()
+    {
+        return bossThreads;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * By default, all factories share the boss group (that accepts the connections)
+     * of the container. See EventLoopTopology.
+     * 
+     * @param       bossThreads             The amount of threads of a dedicated group,
+     *                                      or 0 to use the shared group.
+     * @return      These settings.
+     */
+    public GameAppSettings setBossThreads(int bossThreads)
+    {
+        if (bossThreads < 0) { throw new IllegalArgumentException("The amount of boss threads must not be negative."); }
+        
+        this.bossThreads = bossThreads;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of threads of the dedicated worker group of the factory,
+     *              or 0 if it uses the shared group of the container.
+     */
+    public int getWorkerThreads()
+    {
+        return workerThreads;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * By default, all factories share the worker group (that handles the connections)
+     * of the container. See EventLoopTopology.
+     * 
+     * @param       workerThreads           The amount of threads of a dedicated group,
+     *                                      or 0 to use the shared group.
+     * @return      These settings.
+     */
+    public GameAppSettings setWorkerThreads(int workerThreads)
+    {
+        if (workerThreads < 0) { throw new IllegalArgumentException("The amount of worker threads must not be negative."); }
+        
+        this.workerThreads = workerThreads;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of server channels that accept the connections of the factory.
+     */
+    public int getAcceptors()
+    {
+        return acceptors;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * With more than one acceptor, the server channel of the factory is bound
+     * several times to the same port (using SO_REUSEPORT), so the kernel spreads 
+     * new connections among them and they can be accepted in parallel.
+     * This needs the epoll transport (see EventLoopTopology.setTransport), and 
+     * a boss group with a thread per acceptor.
+     * 
+     * @param       acceptors               The amount of acceptors. Default is 1.
+     * @return      These settings.
+     */
+    public GameAppSettings setAcceptors(int acceptors)
+    {
+        if (acceptors < 1) { throw new IllegalArgumentException("There must be at least one acceptor."); }
+        
+        this.acceptors = acceptors;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if the server channel of the factory is only bound
+     *              when its first game app is created.
+     */
+    public boolean isLazyBinding()
+    {
+        return lazyBinding;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If enabled, GameAppFactory.getServerChannel is not called when the container 
+     * starts, but when the first game app of the factory is created. This speeds up
+     * the startup, and keeps the ports of unused factories closed.
+     * 
+     * @param       lazyBinding             True to bind the server channel lazily.
+     * @return      These settings.
+     */
+    public GameAppSettings setLazyBinding(boolean lazyBinding)
+    {
+        this.lazyBinding = lazyBinding;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if each game app has a home event loop.
+     */
+    public boolean isEventLoopAffinity()
+    {
+        return eventLoopAffinity;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If enabled, each game app is assigned one event loop of the worker group
+     * of its factory. Its event handlers run on that loop (instead of the executor
+     * strategy, or the global executor for ticks), and channels that are claimed
+     * by the game app are moved to that loop, so reading, handling and writing 
+     * happens on the same thread. 
+     * Handlers of such game apps must not block. This has no effect on game apps 
+     * with a ring buffer, as these have their own thread.
+     * With a dispatch queue and the BLOCK policy, the event loops never wait for
+     * space (they would wait for themselves). Instead, the channels of their messages
+     * stop reading until the queue drained, and their other events are dropped.
+     * 
+     * @param       eventLoopAffinity       True to pin each game app to an event loop.
+     * @return      These settings.
+     */
+    public GameAppSettings setEventLoopAffinity(boolean eventLoopAffinity)
+    {
+        this.eventLoopAffinity = eventLoopAffinity;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if unrouted events only go to the game apps that handle them.
+     */
+    public boolean isInterestFiltering()
+    {
+        return interestFiltering;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * If enabled, the meta context of the factory only sends unrouted events and
+     * messages to the game apps that have handlers for them (looked up once per
+     * event class, see MetaGameAppContext). Otherwise, they are sent to all game apps.
+     * Enable this if there are many game apps that ignore most of the events.
+     * 
+     * @param       interestFiltering       True to filter the game apps by their handlers.
+     * @return      These settings.
+     */
+    public GameAppSettings setInterestFiltering(boolean interestFiltering)
+    {
+        this.interestFiltering = interestFiltering;
+        return this;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of game apps that are kept prepared (see PoolableGameAppFactory)
+     */
+    public int getMinPooledInstances()
+    {
+        return minPooledInstances;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The maximum amount of idle game apps in the pool, 
+     *              or 0 if the factory has no pool.
+     */
+    public int getMaxPooledInstances()
+    {
+        return maxPooledInstances;
+    }
+    
+    
+    /**
+     * Setter.
+     * 
+     * Only used if the factory is a PoolableGameAppFactory: The container keeps
+     * at least the minimum amount of game apps prepared (refilled in the background),
+     * and keeps recycled game apps up to the maximum amount.
+     * 
+     * @param       minPooledInstances      The amount of game apps that are kept prepared.
+     * @param       maxPooledInstances      The maximum amount of idle game apps, or 0 to
+     *                                      disable the pool.
+     * @return      These settings.
+     */
+    public GameAppSettings setInstancePool(int minPooledInstances, int maxPooledInstances)
+    {
+        if (minPooledInstances < 0 || maxPooledInstances < minPooledInstances) 
+        { 
+            throw new IllegalArgumentException("The pool sizes must satisfy 0 <= min <= max."); 
+        }
+        
+        this.minPooledInstances = minPooledInstances;
+        this.maxPooledInstances = maxPooledInstances;
+        return this;
+    }
+}
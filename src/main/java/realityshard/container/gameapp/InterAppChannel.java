@@ -0,0 +1,280 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.gameapp;
+
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import realityshard.container.GlobalExecutor;
+import realityshard.container.events.DispatchQueue;
+import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
+import realityshard.container.util.Handle;
+import realityshard.container.util.SpscArrayQueue;
+
+
+/**
+ * A one-way channel that sends events to another game app of the same container
+ * (e.g. from a world server to its zone servers and back, see getParentContext).
+ * 
+ * Unlike trigger, events are passed through a bounded lock-free queue, and the
+ * receiver handles them in batches: There is at most one task on the executor
+ * of the receiver at a time, which calls the handlers of up to batchSize events
+ * right away. Events are passed by reference (reference counted ones are retained
+ * until they are handled).
+ * 
+ * If the receiver falls behind, the queue fills up and offer fails (or send waits),
+ * so the sender can slow down instead of flooding the receiver.
+ * If the dispatch queue of the receiver drops a batch task, the batch is
+ * scheduled again shortly after.
+ * 
+ * Only one thread at a time may send to a channel, e.g. the sender uses serial
+ * dispatch or event loop affinity, or each sender thread gets its own channel.
+ * For the other direction, the receiver opens a channel of its own.
+ * Game apps on other nodes of a cluster cannot receive through a channel,
+ * trigger their events instead.
+ * 
+ * @author _rusty
+ */
+public final class InterAppChannel
+{
+    
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(InterAppChannel.class);
+    
+    // the longest nap of a sender that waits for space
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    
+    // how long we wait before we schedule a drain task that the receiver dropped again
+    private static final long RETRY_DELAY_MILLIS = 10;
+    
+    
+    /**
+     * Handles a batch of events on the threads of the receiver.
+     */
+    private final class Drain implements DispatchQueue.DroppableTask
+    {
+        
+        @Override
+        public void run()
+        {
+            for (int i = 0; i < batchSize; i++)
+            {
+                Event event = queue.poll();
+                
+                if (event == null) { break; }
+                
+                try
+                {
+                    aggregator.handleEvent(event);
+                }
+                finally
+                {
+                    ReferenceCountUtil.release(event);
+                }
+            }
+            
+            // anything that was sent from now on needs a new task
+            scheduled.set(false);
+            
+            if (!queue.isEmpty()) { schedule(); }
+        }
+        
+        
+        @Override
+        public void dropped()
+        {
+            scheduled.set(false);
+            
+            // the events are still in the queue, but the sender might not send
+            // anything else that would schedule them. (Not right away, the receiver
+            // would most likely drop it again, and it would not return meanwhile)
+            if (!queue.isEmpty())
+            {
+                GlobalExecutor.get().schedule(retry, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    
+    private final Handle<GameAppContext> receiver;
+    private final EventAggregator aggregator;
+    private final SpscArrayQueue<Event> queue;
+    private final int batchSize;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Drain drain = new Drain();
+    
+    private final Runnable retry = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if (!queue.isEmpty()) { schedule(); }
+        }
+    };
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       receiver                The game app that handles the events.
+     *                                      It must run in this container.
+     * @throws      IllegalArgumentException    If the receiver runs on another node of the cluster.
+     */
+    public InterAppChannel(Handle<GameAppContext> receiver)
+    {
+        this(receiver, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       receiver                The game app that handles the events.
+     *                                      It must run in this container (remote
+     *                                      game apps have no event aggregator)
+     * @param       capacity                The maximum amount of events that wait for the receiver.
+     * @param       batchSize               The maximum amount of events handled by one task.
+     * @throws      IllegalArgumentException    If the receiver runs on another node of the cluster
+     *                                          (use trigger for those)
+     */
+    public InterAppChannel(Handle<GameAppContext> receiver, int capacity, int batchSize)
+    {
+        if (batchSize <= 0) { throw new IllegalArgumentException("The batch size must be positive."); }
+        
+        this.receiver = receiver;
+        this.aggregator = localAggregatorOf(receiver);
+        this.queue = new SpscArrayQueue<>(capacity);
+        this.batchSize = batchSize;
+    }
+    
+    
+    /**
+     * Send an event, if there is space for it.
+     * 
+     * @param       event                   The event.
+     * @return      True if it was sent, false if the receiver is too far behind.
+     */
+    public boolean offer(Event event)
+    {
+        ReferenceCountUtil.retain(event);
+        
+        if (!queue.offer(event))
+        {
+            ReferenceCountUtil.release(event);
+            return false;
+        }
+        
+        if (!scheduled.get()) { schedule(); }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Send an event, waiting for space if necessary.
+     * (Dont wait for a receiver that runs on the same thread as the sender)
+     * 
+     * @param       event                   The event.
+     * @param       timeout                 The maximum time to wait.
+     * @param       unit                    The unit of the timeout.
+     * @return      True if it was sent, false if the receiver did not catch up in time.
+     */
+    public boolean send(Event event, long timeout, TimeUnit unit)
+    {
+        if (offer(event)) { return true; }
+        
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long backoff = 1000;
+        
+        while (!offer(event))
+        {
+            long remaining = deadline - System.nanoTime();
+            
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) { return false; }
+            
+            LockSupport.parkNanos(Math.min(backoff, remaining));
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+        }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The game app that handles the events.
+     */
+    public Handle<GameAppContext> getReceiver()
+    {
+        return receiver;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of events that wait for the receiver.
+     */
+    public int getDepth()
+    {
+        return queue.size();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The maximum amount of events that wait for the receiver.
+     */
+    public int getCapacity()
+    {
+        return queue.capacity();
+    }
+    
+    
+    /**
+     * Get the event aggregator of a game app of this container.
+     * (createGameApp may return a game app of another node in cluster mode)
+     */
+    private static EventAggregator localAggregatorOf(Handle<GameAppContext> receiver)
+    {
+        try
+        {
+            return receiver.get().getEventAggregator();
+        }
+        catch (UnsupportedOperationException ex)
+        {
+            throw new IllegalArgumentException("The receiver of an inter-app channel must run in this container: " + receiver.get().getName(), ex);
+        }
+    }
+    
+    
+    /**
+     * Make sure there is a task that handles the queued events.
+     */
+    private void schedule()
+    {
+        if (!scheduled.compareAndSet(false, true)) { return; }
+        
+        try
+        {
+            aggregator.execute(drain);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // the receiver has been shut down
+            scheduled.set(false);
+            LOGGER.warn("The receiver of an inter-app channel does not accept events anymore. [name {} ]", receiver.get().getName());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.gameapp;
+
+import java.util.Map;
+import realityshard.container.util.Handle;
+
+
+/**
+ * A game app factory whose game apps can be prepared in advance, so creating
+ * one only needs to bind its parameters (e.g. for instanced dungeons, the map
+ * data can already be loaded before a party enters)
+ * 
+ * The container keeps a pool of prepared game apps for such factories, if the
+ * pool size is set (see GameAppSettings.setInstancePool). The pool is refilled
+ * in the background. Without a pool, or if it is empty, the game app is prepared
+ * and activated right away.
+ * 
+ * (initGameApp is not used for these factories)
+ * 
+ * @author _rusty
+ */
+public interface PoolableGameAppFactory extends GameAppFactory
+{
+    
+    /**
+     * Prepare a new game app, doing everything that doesnt depend on the
+     * parameters of the creation. The game app doesnt receive any network 
+     * messages yet.
+     * 
+     * (This is usually called by a background thread of the pool)
+     * 
+     * @param       thisContext             The context of the new game app.
+     * @return      True if the game app was successfully prepared.
+     */
+    public boolean prepareGameApp(Handle<GameAppContext> thisContext);
+    
+    
+    /**
+     * Hand out a prepared game app.
+     * 
+     * @param       thisContext             The context of the game app. Note that this
+     *                                      may be a different handle than the one used
+     *                                      for preparing it, if the game app was recycled.
+     * @param       parentContext           The parent context of the game app (if any)
+     * @param       additionalParams        The additional parameters used for game app creation.
+     * @return      True if the game app was successfully activated.
+     */
+    public boolean activateGameApp(Handle<GameAppContext> thisContext, Handle<GameAppContext> parentContext, Map<String, String> additionalParams);
+    
+    
+    /**
+     * Reset a game app that was removed, so it can be activated again.
+     * 
+     * @param       thisContext             The context of the game app.
+     * @return      True if the game app can be reused, false if it should be unloaded.
+     */
+    public boolean recycleGameApp(Handle<GameAppContext> thisContext);
+}
@@ -0,0 +1,49 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.network;
+
+
+/**
+ * The JMX view of an event loop group of the container.
+ * 
+ * @author _rusty
+ */
+public interface EventLoopGroupMetricsMXBean
+{
+    
+    /**
+     * Getter.
+     * 
+     * @return      The name of the group (e.g. container-1-shared-worker)
+     */
+    public String getName();
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of event loops (threads) of the group.
+     */
+    public int getThreadCount();
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The CPU time that the threads of the group used so far,
+     *              or -1 if the JVM cannot measure it.
+     */
+    public long getCpuTimeNanos();
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The average load of the event loops during the last sample interval
+     *              (0 = idle, 1 = all threads busy), or -1 if the JVM cannot measure it.
+     *              Reading it does not affect the value.
+     */
+    public double getUtilization();
+}
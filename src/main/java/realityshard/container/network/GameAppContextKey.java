@@ -15,11 +15,11 @@ import realityshard.container.gameapp.GameAppContext;
  */
 public abstract class GameAppContextKey 
 {
-	public static AttributeKey<GameAppContext> KEY = new AttributeKey<>(GameAppContext.class.getName());
+	public static AttributeKey<GameAppContext> KEY = AttributeKey.valueOf(GameAppContext.class.getName());
         
         /**
          * Determines if the channel has been assigned to a game app instance, i.e. if the 
          * attribute of this KEY has been changed.
          */
-        public static AttributeKey<Boolean> IS_SET = new AttributeKey<>(GameAppContext.class.getName() + "_is_set");
+        public static AttributeKey<Boolean> IS_SET = AttributeKey.valueOf(GameAppContext.class.getName() + "_is_set");
 }
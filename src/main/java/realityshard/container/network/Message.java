@@ -5,19 +5,86 @@
 package realityshard.container.network;
 
 import io.netty.channel.Channel;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import realityshard.container.events.Event;
+import realityshard.container.util.ObjectPool;
 
 
 /**
  * Encapsulates a message from a client
  * (All messages are events at the same time)
  * 
+ * Messages taken from a Message.Pool are reference counted like netty's buffers:
+ * The event-aggregator retains a message for every handler call that it queues,
+ * and releases it when the handler is done. When the reference count drops to
+ * zero, the message goes back to its pool.
+ * 
+ * All other messages are left to the garbage collector, so for them the
+ * reference count is always 1, and retain and release do nothing (they dont
+ * pay for the atomic updates that only the pooled messages need).
+ * 
  * @author _rusty
  */
-public class Message implements Event
+public class Message implements Event, ReferenceCounted
 {
     
+    /**
+     * A pool of recyclable messages of a certain type.
+     * 
+     * Get messages with acquire(), and release them when you are done (the 
+     * netty pipeline does that for you, if you pass them on). Override reset()
+     * in your message type, to clear its fields before it is reused.
+     * 
+     * @param       <T>                     The message type
+     * 
+     * @author _rusty
+     */
+    public abstract static class Pool<T extends Message> extends ObjectPool<T>
+    {
+        
+        /**
+         * Get a message from the pool and initialize it.
+         * 
+         * @param       channel                 The channel that the message originates from
+         * @return      The message, with a reference count of 1.
+         */
+        public T acquire(Channel channel)
+        {
+            T message = get();
+            
+            REF_CNT.set(message, 1);
+            message.init(channel);
+            
+            return message;
+        }
+        
+        
+        /**
+         * Factory method.
+         * 
+         * @return      A new message for this pool.
+         */
+        protected abstract T newMessage();
+        
+        
+        @Override
+        protected final T newObject(ObjectPool.Handle<T> handle)
+        {
+            T message = newMessage();
+            ((Message) message).poolHandle = handle;
+            
+            return message;
+        }
+    }
+    
+    
+    private static final AtomicIntegerFieldUpdater<Message> REF_CNT = AtomicIntegerFieldUpdater.newUpdater(Message.class, "refCnt");
+    
     private Channel channel;
+    private volatile int refCnt = 1;
+    private ObjectPool.Handle<?> poolHandle;
     
     
     /**
@@ -41,4 +108,87 @@ public class Message implements Event
     {
         return channel;
     }
+    
+    
+    @Override
+    public int refCnt()
+    {
+        // see the class doc: only pooled messages are counted
+        return (poolHandle == null) ? 1 : refCnt;
+    }
+    
+    
+    @Override
+    public Message retain()
+    {
+        return retain(1);
+    }
+    
+    
+    @Override
+    public Message retain(int increment)
+    {
+        if (increment <= 0) { throw new IllegalArgumentException("The increment must be positive."); }
+        if (poolHandle == null) { return this; }
+        
+        while (true)
+        {
+            int current = refCnt;
+            
+            if (current == 0) { throw new IllegalReferenceCountException(0, increment); }
+            if (current > Integer.MAX_VALUE - increment) { throw new IllegalReferenceCountException(current, increment); }
+            
+            if (REF_CNT.compareAndSet(this, current, current + increment)) { return this; }
+        }
+    }
+    
+    
+    @Override
+    public boolean release()
+    {
+        return release(1);
+    }
+    
+    
+    @Override
+    public boolean release(int decrement)
+    {
+        if (decrement <= 0) { throw new IllegalArgumentException("The decrement must be positive."); }
+        if (poolHandle == null) { return false; }
+        
+        while (true)
+        {
+            int current = refCnt;
+            
+            if (current < decrement) { throw new IllegalReferenceCountException(current, -decrement); }
+            
+            if (REF_CNT.compareAndSet(this, current, current - decrement))
+            {
+                if (current != decrement) { return false; }
+                
+                deallocate();
+                return true;
+            }
+        }
+    }
+    
+    
+    /**
+     * Clear the state of this message, before it is reused by its pool.
+     * Override this in pooled message types.
+     */
+    protected void reset()
+    {
+    }
+    
+    
+    /**
+     * Called when the reference count of a pooled message dropped to zero.
+     */
+    private void deallocate()
+    {
+        channel = null;
+        reset();
+        poolHandle.recycle();
+    }
 }
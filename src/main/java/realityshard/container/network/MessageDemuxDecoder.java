@@ -14,6 +14,9 @@ import realityshard.container.gameapp.GameAppContext;
  * This handler demultiplexes the incoming messages to the event-aggregators
  * of the game-apps of the channel.
  * 
+ * Note that inline event handlers (see Event.Handler) will be called by this
+ * decoder directly, on the event loop of the channel.
+ * 
  * @author _rusty
  */
 public class MessageDemuxDecoder extends MessageToMessageDecoder<Message>
@@ -29,7 +32,8 @@ public class MessageDemuxDecoder extends MessageToMessageDecoder<Message>
         context.handleMessage(msg);
         
         // we dont break the cycle here - maybe other handlers sit behind this one
-        out.add(msg);
+        // (the decoder releases the message after this method, so keep it alive for them)
+        out.add(msg.retain());
     }
 
 }
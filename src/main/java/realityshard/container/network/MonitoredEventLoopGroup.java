@@ -0,0 +1,179 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.network;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultithreadEventLoopGroup;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Holds an event loop group (of any transport) and knows its threads, so it can 
+ * report how busy they are. 
+ * 
+ * The utilization is measured by the CPU time of the loop threads: an idle
+ * loop blocks in its selector (or epoll_wait) and uses none. It is sampled
+ * once per interval by the group itself, so any number of readers (JMX
+ * consoles, the cluster) see the same value.
+ * 
+ * @author _rusty
+ */
+public class MonitoredEventLoopGroup implements EventLoopGroupMetricsMXBean
+{
+    
+    // Creates the loop threads and remembers them
+    private static final class RecordingThreadFactory implements ThreadFactory
+    {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+        public final List<Thread> Threads = new CopyOnWriteArrayList<>();
+        
+        
+        public RecordingThreadFactory(String name)
+        {
+            this.name = name;
+        }
+        
+        
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            Threads.add(thread);
+            return thread;
+        }
+    }
+    
+    
+    /**
+     * The time between two utilization samples
+     */
+    public static final long SAMPLE_INTERVAL_MILLIS = 1000;
+    
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    
+    private final String name;
+    private final RecordingThreadFactory threadFactory;
+    private final EventLoopGroup group;
+    
+    // the values of the previous utilization sample (only used by the sampling task)
+    private long lastCpuTime;
+    private long lastSampleTime = System.nanoTime();
+    private volatile double utilization = 0;
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       name                    The name of the group (and the prefix of its threads)
+     * @param       threads                 The amount of event loops, or 0 for netty's
+     *                                      default (twice the amount of cores)
+     * @param       transport               The transport of the event loops.
+     */
+    public MonitoredEventLoopGroup(String name, int threads, Transport transport)
+    {
+        this.name = name;
+        this.threadFactory = new RecordingThreadFactory(name);
+        this.group = transport.newGroup(threads, threadFactory);
+        
+        // this ends when the group is shut down
+        group.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sampleUtilization();
+            }
+        }, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The actual event loop group (for the bootstrap)
+     */
+    public EventLoopGroup getGroup()
+    {
+        return group;
+    }
+    
+    
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+    
+    
+    @Override
+    public int getThreadCount()
+    {
+        return (group instanceof MultithreadEventLoopGroup) ? 
+                ((MultithreadEventLoopGroup) group).executorCount() : 
+                threadFactory.Threads.size();
+    }
+    
+    
+    @Override
+    public long getCpuTimeNanos()
+    {
+        if (!THREADS.isThreadCpuTimeSupported() || !THREADS.isThreadCpuTimeEnabled()) { return -1; }
+        
+        long total = 0;
+        
+        for (Thread thread : threadFactory.Threads)
+        {
+            // this is -1 for threads that are not alive
+            total += Math.max(0, THREADS.getThreadCpuTime(thread.getId()));
+        }
+        
+        return total;
+    }
+    
+    
+    @Override
+    public double getUtilization()
+    {
+        return utilization;
+    }
+    
+    
+    /**
+     * Compute the utilization since the previous sample.
+     * (Run by the group every SAMPLE_INTERVAL_MILLIS)
+     */
+    private void sampleUtilization()
+    {
+        long cpuTime = getCpuTimeNanos();
+        
+        if (cpuTime < 0)
+        {
+            utilization = -1;
+            return;
+        }
+        
+        long now = System.nanoTime();
+        long elapsed = (now - lastSampleTime) * getThreadCount();
+        
+        utilization = (elapsed <= 0) ? 0 : Math.min(1.0, (double) (cpuTime - lastCpuTime) / elapsed);
+        
+        lastCpuTime = cpuTime;
+        lastSampleTime = now;
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s [threads %d ] [cpu %d ms ]", name, getThreadCount(), getCpuTimeNanos() / 1000000);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.network;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * The netty transport that the container uses for its network threads and channels.
+ * 
+ * @author _rusty
+ */
+public enum Transport
+{
+    /**
+     * Java NIO, works everywhere (the default)
+     */
+    NIO
+    {
+        @Override
+        public boolean isAvailable()
+        {
+            return true;
+        }
+        
+        
+        @Override
+        public EventLoopGroup newGroup(int threads, ThreadFactory threadFactory)
+        {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+        
+        
+        @Override
+        public Class<? extends ServerChannel> getServerChannelClass()
+        {
+            return NioServerSocketChannel.class;
+        }
+        
+        
+        @Override
+        public Class<? extends Channel> getChannelClass()
+        {
+            return NioSocketChannel.class;
+        }
+    },
+    
+    /**
+     * Netty's native epoll transport (Linux only), which uses edge-triggered I/O
+     * and supports SO_REUSEPORT, so several acceptors can bind the same port.
+     */
+    EPOLL
+    {
+        @Override
+        public boolean isAvailable()
+        {
+            return Epoll.isAvailable();
+        }
+        
+        
+        @Override
+        public EventLoopGroup newGroup(int threads, ThreadFactory threadFactory)
+        {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+        
+        
+        @Override
+        public Class<? extends ServerChannel> getServerChannelClass()
+        {
+            return EpollServerSocketChannel.class;
+        }
+        
+        
+        @Override
+        public Class<? extends Channel> getChannelClass()
+        {
+            return EpollSocketChannel.class;
+        }
+    };
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if this transport can be used on this machine.
+     */
+    public abstract boolean isAvailable();
+    
+    
+    /**
+     * Factory method.
+     * 
+     * @param       threads                 The amount of event loops, or 0 for netty's default.
+     * @param       threadFactory           Creates the threads of the loops.
+     * @return      A new event loop group of this transport.
+     */
+    public abstract EventLoopGroup newGroup(int threads, ThreadFactory threadFactory);
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The server channel class of this transport (for the bootstrap)
+     */
+    public abstract Class<? extends ServerChannel> getServerChannelClass();
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The client channel class of this transport (for outgoing connections)
+     */
+    public abstract Class<? extends Channel> getChannelClass();
+}
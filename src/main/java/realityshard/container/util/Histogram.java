@@ -0,0 +1,134 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A lock-free histogram of non-negative values (like durations in nanoseconds)
+ * with power-of-two buckets.
+ * 
+ * Recording a value only needs a few atomic increments, so this is cheap enough
+ * to be used on hot paths. Percentiles are approximated by the upper bound
+ * of the bucket they fall into (so they are at most twice the real value).
+ * 
+ * @author _rusty
+ */
+public final class Histogram
+{
+    
+    private static final int BUCKETS = 64;
+    
+    // bucket i holds the values that need i bits
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    
+    /**
+     * Add a value.
+     * 
+     * @param       value                   The value. Negative values count as 0.
+     */
+    public void record(long value)
+    {
+        if (value < 0) { value = 0; }
+        
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) { }
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The amount of recorded values.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The average of the recorded values, or 0 if there are none.
+     */
+    public long getMean()
+    {
+        long c = count.get();
+        
+        return (c == 0) ? 0 : sum.get() / c;
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The largest recorded value.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+    
+    
+    /**
+     * Get the (approximate) value below which a certain fraction of the values lies.
+     * 
+     * @param       fraction                The fraction, between 0 and 1 (e.g. 0.99)
+     * @return      The upper bound of the bucket of that percentile, or 0 if 
+     *              there are no values.
+     */
+    public long getPercentile(double fraction)
+    {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        
+        if (total == 0) { return 0; }
+        
+        long threshold = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += snapshot[i];
+            
+            if (seen >= threshold)
+            {
+                return (i == 0) ? 0 : Math.min(max.get(), (1L << i) - 1);
+            }
+        }
+        
+        return max.get();
+    }
+    
+    
+    /**
+     * Forget all recorded values.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) { buckets.set(i, 0); }
+        
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Lock-free, unbounded multi-producer single-consumer queue.
+ * 
+ * Any thread may offer elements concurrently, but only one thread at a time
+ * may poll (the consumer). Offering is a single atomic swap, polling needs no
+ * atomic operation at all.
+ * (Based on Dmitry Vyukov's intrusive MPSC node queue)
+ * 
+ * @param       <E>                         The element type
+ * 
+ * @author _rusty
+ */
+public final class MpscLinkedQueue<E>
+{
+    
+    // Storage class
+    private static final class Node<E>
+    {
+        public E Value;
+        public volatile Node<E> Next;
+    }
+    
+    
+    // the producers append here
+    private final AtomicReference<Node<E>> head;
+    
+    // the consumer removes from here (this is always a stub node)
+    private Node<E> tail;
+    
+    
+    /**
+     * Constructor.
+     */
+    public MpscLinkedQueue()
+    {
+        Node<E> stub = new Node<>();
+        
+        head = new AtomicReference<>(stub);
+        tail = stub;
+    }
+    
+    
+    /**
+     * Add an element to the queue.
+     * Can be called by any thread.
+     * 
+     * @param       element                 The element. Must not be null.
+     */
+    public void offer(E element)
+    {
+        if (element == null) { throw new NullPointerException(); }
+        
+        Node<E> node = new Node<>();
+        node.Value = element;
+        
+        // link the node only after we made it the new head, so
+        // concurrent producers never block each other
+        Node<E> prev = head.getAndSet(node);
+        prev.Next = node;
+    }
+    
+    
+    /**
+     * Remove the oldest element of the queue.
+     * Must only be called by the consumer.
+     * 
+     * @return      The element, or null if the queue is (currently) empty.
+     */
+    public E poll()
+    {
+        Node<E> next = tail.Next;
+        
+        if (next == null) { return null; }
+        
+        // the node we got becomes the new stub
+        E result = next.Value;
+        next.Value = null;
+        tail = next;
+        
+        return result;
+    }
+    
+    
+    /**
+     * Check if the queue has any elements that can be polled.
+     * Must only be called by the consumer.
+     * 
+     * @return      True if there is nothing to poll.
+     */
+    public boolean isEmpty()
+    {
+        return tail.Next == null;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * A lock-free pool of reusable objects.
+ * 
+ * Every thread takes objects from its own stack, so getting an object never
+ * contends with other threads. An object can be recycled from any thread:
+ * If that is the thread that took it, it is pushed back to the local stack
+ * directly, otherwise it is handed back to the owner thread, which will pick
+ * it up the next time its local stack runs empty.
+ * 
+ * Objects that do not fit into the pool anymore are simply dropped and left
+ * to the garbage collector.
+ * 
+ * @param       <T>                         The type of the pooled objects
+ * 
+ * @author _rusty
+ */
+public abstract class ObjectPool<T>
+{
+    
+    /**
+     * The maximum amount of objects kept per thread, by default
+     */
+    public static final int DEFAULT_MAX_PER_THREAD = 1024;
+    
+    
+    /**
+     * Links a pooled object to the stack it belongs to.
+     * Keep this within your pooled object and call recycle() when the
+     * object is not used anymore.
+     * 
+     * @param       <T>                     The type of the pooled object
+     */
+    public static final class Handle<T>
+    {
+        private final Stack<T> stack;
+        private T value;
+        private Handle<T> next;
+        private boolean pooled;
+        
+        
+        private Handle(Stack<T> stack)
+        {
+            this.stack = stack;
+        }
+        
+        
+        /**
+         * Give the object back to its pool.
+         * Don't use the object after you called this.
+         */
+        public void recycle()
+        {
+            stack.push(this);
+        }
+    }
+    
+    
+    // Storage class, one per thread
+    // (the objects are linked through their handles, so a stack only takes
+    // as much memory as the objects that are actually in it)
+    private static final class Stack<T>
+    {
+        private final Thread owner;
+        private final int maxSize;
+        private Handle<T> head;
+        private int size;
+        
+        // the objects that have been recycled by other threads
+        private final AtomicReference<Handle<T>> returned = new AtomicReference<>();
+        private final AtomicInteger returnedCount = new AtomicInteger();
+        
+        
+        public Stack(Thread owner, int maxSize)
+        {
+            this.owner = owner;
+            this.maxSize = maxSize;
+        }
+        
+        
+        public Handle<T> pop()
+        {
+            if (size == 0 && !transferReturned()) { return null; }
+            
+            Handle<T> handle = head;
+            head = handle.next;
+            size--;
+            
+            handle.next = null;
+            handle.pooled = false;
+            
+            return handle;
+        }
+        
+        
+        public void push(Handle<T> handle)
+        {
+            if (handle.pooled) { throw new IllegalStateException("The object has already been recycled."); }
+            
+            if (Thread.currentThread() == owner)
+            {
+                if (size == maxSize) { return; }
+                
+                handle.pooled = true;
+                pushLocal(handle);
+                return;
+            }
+            
+            // foreign thread: hand it back to the owner,
+            // but dont let the returned objects grow without bounds
+            if (returnedCount.incrementAndGet() > maxSize)
+            {
+                returnedCount.decrementAndGet();
+                return;
+            }
+            
+            handle.pooled = true;
+            
+            Handle<T> first;
+            do
+            {
+                first = returned.get();
+                handle.next = first;
+            }
+            while (!returned.compareAndSet(first, handle));
+        }
+        
+        
+        private void pushLocal(Handle<T> handle)
+        {
+            handle.next = head;
+            head = handle;
+            size++;
+        }
+        
+        
+        private boolean transferReturned()
+        {
+            // only the owner takes objects out, and it always takes all of them,
+            // so the lock-free stack is safe without any ABA protection
+            Handle<T> handle = returned.getAndSet(null);
+            
+            if (handle == null) { return false; }
+            
+            while (handle != null)
+            {
+                Handle<T> next = handle.next;
+                returnedCount.decrementAndGet();
+                
+                if (size < maxSize)
+                {
+                    pushLocal(handle);
+                }
+                else
+                {
+                    handle.next = null;
+                }
+                
+                handle = next;
+            }
+            
+            return size > 0;
+        }
+    }
+    
+    
+    private final int maxPerThread;
+    private final ThreadLocal<Stack<T>> stacks = new ThreadLocal<Stack<T>>()
+    {
+        @Override
+        protected Stack<T> initialValue()
+        {
+            return new Stack<>(Thread.currentThread(), maxPerThread);
+        }
+    };
+    
+    
+    /**
+     * Constructor.
+     */
+    public ObjectPool()
+    {
+        this(DEFAULT_MAX_PER_THREAD);
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       maxPerThread            The maximum amount of objects kept per thread.
+     */
+    public ObjectPool(int maxPerThread)
+    {
+        if (maxPerThread < 1) { throw new IllegalArgumentException("The pool size must be positive."); }
+        
+        this.maxPerThread = maxPerThread;
+    }
+    
+    
+    /**
+     * Get an object from the pool, or create a new one if the pool is empty.
+     * 
+     * @return      The object.
+     */
+    public final T get()
+    {
+        Stack<T> stack = stacks.get();
+        Handle<T> handle = stack.pop();
+        
+        if (handle == null)
+        {
+            handle = new Handle<>(stack);
+            handle.value = newObject(handle);
+        }
+        
+        return handle.value;
+    }
+    
+    
+    /**
+     * Factory method.
+     * 
+     * Create a new pooled object.
+     * 
+     * @param       handle                  The handle of the new object. The object
+     *                                      should keep it, to be able to recycle itself.
+     * @return      The new object.
+     */
+    protected abstract T newObject(Handle<T> handle);
+}
@@ -0,0 +1,142 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An executor that runs its tasks one after another, in the order they were
+ * submitted, but on the threads of an underlying (shared) executor.
+ * 
+ * The tasks are collected in a lock-free mailbox. Whenever there is work to do,
+ * a single drain task is sent to the underlying executor, which will then run
+ * up to a batch of tasks before it gives the thread back. This means that
+ * the tasks of one serial executor never run concurrently, while many serial
+ * executors can still run in parallel.
+ * 
+ * @author _rusty
+ */
+public final class SerialExecutor implements Executor, Runnable
+{
+    
+    /**
+     * The amount of tasks that are run per drain, by default
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(SerialExecutor.class);
+    
+    private final MpscLinkedQueue<Runnable> mailbox = new MpscLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Executor executor;
+    private final int batchSize;
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       executor                The executor that will actually run the tasks.
+     */
+    public SerialExecutor(Executor executor)
+    {
+        this(executor, DEFAULT_BATCH_SIZE);
+    }
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       executor                The executor that will actually run the tasks.
+     * @param       batchSize               The maximum amount of tasks that are run before
+     *                                      the thread is given back to the executor.
+     */
+    public SerialExecutor(Executor executor, int batchSize)
+    {
+        if (batchSize < 1) { throw new IllegalArgumentException("The batch size must be positive."); }
+        
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+    
+    
+    /**
+     * Add a task to the mailbox and make sure that it will be drained.
+     * 
+     * @param       task                    The task.
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        mailbox.offer(task);
+        
+        if (scheduled.compareAndSet(false, true))
+        {
+            executor.execute(this);
+        }
+    }
+    
+    
+    /**
+     * Drain the mailbox.
+     * Do not call this directly, it is run by the underlying executor.
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            for (int i = 0; i < batchSize; i++)
+            {
+                Runnable task = mailbox.poll();
+                
+                if (task == null) { break; }
+                
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException ex)
+                {
+                    LOGGER.warn("A task of a serial executor failed.", ex);
+                }
+            }
+        }
+        finally
+        {
+            // even if a task threw an error, the remaining tasks must not be
+            // stuck behind a flag that no one resets
+            reschedule();
+        }
+    }
+    
+    
+    /**
+     * Give the drain task back to the underlying executor if there is more to do,
+     * or reset the flag so that the next producer schedules it.
+     */
+    private void reschedule()
+    {
+        // if the batch was full, we let other tasks of the underlying executor
+        // run before we continue
+        if (!mailbox.isEmpty())
+        {
+            executor.execute(this);
+            return;
+        }
+        
+        scheduled.set(false);
+        
+        // a producer might have added something after we checked the mailbox
+        // but before we reset the flag, so check again
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+        {
+            executor.execute(this);
+        }
+    }
+}
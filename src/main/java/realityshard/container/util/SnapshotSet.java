@@ -0,0 +1,165 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A concurrent set for many readers that iterate it, while other threads keep
+ * adding and removing elements.
+ * 
+ * Adding and removing only touches a concurrent hash map (constant time, no 
+ * copying like a CopyOnWriteArraySet). Iterating uses an immutable snapshot array,
+ * so readers never lock and never see a half-done change. The snapshot is only
+ * rebuilt by the first reader after a change, so a burst of changes costs
+ * a single copy.
+ * 
+ * Elements are identified by equals/hashCode and must not be null.
+ * 
+ * @param       <T>                     The element type.
+ * 
+ * @author _rusty
+ */
+public final class SnapshotSet<T> implements Iterable<T>
+{
+    
+    // Storage class, the elements at a certain version of the set
+    private static final class Snapshot
+    {
+        public final long Version;
+        public final Object[] Elements;
+        
+        
+        public Snapshot(long version, Object[] elements)
+        {
+            Version = version;
+            Elements = elements;
+        }
+    }
+    
+    
+    private final ConcurrentMap<T, Boolean> members = new ConcurrentHashMap<>();
+    
+    // incremented after each change of the members
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(0, new Object[0]);
+    
+    
+    /**
+     * Add an element.
+     * 
+     * @param       element                 The element.
+     * @return      True if it was not contained yet.
+     */
+    public boolean add(T element)
+    {
+        if (members.putIfAbsent(element, Boolean.TRUE) != null) { return false; }
+        
+        version.incrementAndGet();
+        return true;
+    }
+    
+    
+    /**
+     * Remove an element.
+     * 
+     * @param       element                 The element.
+     * @return      True if it was contained (only one of several concurrent 
+     *              callers gets true)
+     */
+    public boolean remove(Object element)
+    {
+        if (members.remove(element) == null) { return false; }
+        
+        version.incrementAndGet();
+        return true;
+    }
+    
+    
+    /**
+     * Check if an element is contained.
+     * 
+     * @param       element                 The element.
+     * @return      True or false.
+     */
+    public boolean contains(Object element)
+    {
+        return members.containsKey(element);
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The current amount of elements.
+     */
+    public int size()
+    {
+        return members.size();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      True if there are no elements.
+     */
+    public boolean isEmpty()
+    {
+        return members.isEmpty();
+    }
+    
+    
+    /**
+     * Get the current elements.
+     * 
+     * @return      An immutable list, that is not affected by later changes.
+     */
+    public List<T> snapshot()
+    {
+        return Collections.unmodifiableList(Arrays.asList(elements()));
+    }
+    
+    
+    /**
+     * Iterate the elements of the current snapshot.
+     * (The iterator does not support remove, use remove(Object) instead)
+     * 
+     * @return      The iterator.
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        return snapshot().iterator();
+    }
+    
+    
+    /**
+     * Get the elements of the current snapshot, rebuilding it if the set
+     * changed since the last one was taken.
+     */
+    @SuppressWarnings("unchecked")
+    private T[] elements()
+    {
+        // read the version first: the members contain at least all changes up to it
+        long current = version.get();
+        Snapshot last = snapshot;
+        
+        if (last.Version != current)
+        {
+            last = new Snapshot(current, members.keySet().toArray());
+            snapshot = last;
+        }
+        
+        return (T[]) last.Elements;
+    }
+}
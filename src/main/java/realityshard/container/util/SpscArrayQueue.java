@@ -0,0 +1,141 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Lock-free, bounded single-producer single-consumer queue.
+ * 
+ * Only one thread at a time may offer elements (the producer), and only one
+ * thread at a time may poll (the consumer). A slot is free if it is null, so
+ * neither side needs to read the index of the other one.
+ * 
+ * Offering ends with a volatile write, so anything the producer reads afterwards
+ * (e.g. whether the consumer is asleep) is ordered after the new element.
+ * 
+ * @param       <E>                         The element type
+ * 
+ * @author _rusty
+ */
+public final class SpscArrayQueue<E>
+{
+    
+    private final AtomicReferenceArray<E> buffer;
+    private final int mask;
+    
+    // written by the producer only
+    private final AtomicLong producerIndex = new AtomicLong();
+    
+    // written by the consumer only
+    private final AtomicLong consumerIndex = new AtomicLong();
+    
+    
+    /**
+     * Constructor.
+     * 
+     * @param       capacity                The minimum amount of elements that fit into
+     *                                      the queue (this is rounded up to a power of two)
+     */
+    public SpscArrayQueue(int capacity)
+    {
+        if (capacity <= 0 || capacity > (1 << 30)) { throw new IllegalArgumentException("The capacity must be between 1 and 2^30."); }
+        
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) { size <<= 1; }
+        
+        buffer = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+    
+    
+    /**
+     * Add an element to the queue.
+     * Must only be called by the producer.
+     * 
+     * @param       element                 The element. Must not be null.
+     * @return      True if it was added, false if the queue is full.
+     */
+    public boolean offer(E element)
+    {
+        if (element == null) { throw new NullPointerException(); }
+        
+        long index = producerIndex.get();
+        int offset = (int) index & mask;
+        
+        // the consumer did not take that one yet
+        if (buffer.get(offset) != null) { return false; }
+        
+        buffer.lazySet(offset, element);
+        producerIndex.set(index + 1);
+        return true;
+    }
+    
+    
+    /**
+     * Remove the oldest element from the queue.
+     * Must only be called by the consumer.
+     * 
+     * @return      The element, or null if the queue is empty.
+     */
+    public E poll()
+    {
+        long index = consumerIndex.get();
+        int offset = (int) index & mask;
+        E element = buffer.get(offset);
+        
+        if (element == null) { return null; }
+        
+        buffer.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return element;
+    }
+    
+    
+    /**
+     * Getter.
+     * Can be called by any thread.
+     * 
+     * @return      The amount of elements in the queue (this may be outdated already).
+     */
+    public int size()
+    {
+        long after = consumerIndex.get();
+        
+        while (true)
+        {
+            long before = after;
+            long producer = producerIndex.get();
+            after = consumerIndex.get();
+            
+            if (before == after) { return (int) (producer - after); }
+        }
+    }
+    
+    
+    /**
+     * Getter.
+     * Can be called by any thread.
+     * 
+     * @return      True if there are no elements in the queue.
+     */
+    public boolean isEmpty()
+    {
+        return producerIndex.get() == consumerIndex.get();
+    }
+    
+    
+    /**
+     * Getter.
+     * 
+     * @return      The maximum amount of elements in the queue.
+     */
+    public int capacity()
+    {
+        return mask + 1;
+    }
+}
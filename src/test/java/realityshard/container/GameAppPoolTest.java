@@ -0,0 +1,278 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import realityshard.container.gameapp.ConfigurableGameAppFactory;
+import realityshard.container.gameapp.GameAppContext;
+import realityshard.container.gameapp.GameAppFactory;
+import realityshard.container.gameapp.GameAppSettings;
+import realityshard.container.gameapp.PoolableGameAppFactory;
+import realityshard.container.util.Handle;
+import realityshard.container.util.HandleRegistry;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that the pools keep game apps of a poolable factory prepared, and
+ * that the container hides them until they are activated and puts removed
+ * ones back into the pool.
+ * 
+ * @author _rusty
+ */
+public class GameAppPoolTest
+{
+    
+    /**
+     * Keeps one dungeon prepared, and up to two of them idle.
+     */
+    public static final class Dungeons implements PoolableGameAppFactory, ConfigurableGameAppFactory
+    {
+        public final BlockingQueue<Handle<GameAppContext>> Prepared = new LinkedBlockingQueue<>();
+        public final AtomicInteger Activated = new AtomicInteger();
+        public final AtomicInteger Recycled = new AtomicInteger();
+        
+        @Override
+        public String getName()
+        {
+            return "dungeon";
+        }
+        
+        
+        @Override
+        public boolean isStartup()
+        {
+            return false;
+        }
+        
+        
+        @Override
+        public void configure(GameAppSettings settings)
+        {
+            settings.setInstancePool(1, 2);
+        }
+        
+        
+        @Override
+        public Channel getServerChannel(ServerBootstrap bootstrap) throws Exception
+        {
+            return bootstrap
+                    .childHandler(new ChannelInboundHandlerAdapter())
+                    .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        }
+        
+        
+        @Override
+        public boolean initGameApp(Handle<GameAppContext> thisContext, Handle<GameAppContext> parentContext, Map<String, String> additionalParams)
+        {
+            return false;
+        }
+        
+        
+        @Override
+        public boolean prepareGameApp(Handle<GameAppContext> thisContext)
+        {
+            Prepared.add(thisContext);
+            return true;
+        }
+        
+        
+        @Override
+        public boolean activateGameApp(Handle<GameAppContext> thisContext, Handle<GameAppContext> parentContext, Map<String, String> additionalParams)
+        {
+            Activated.incrementAndGet();
+            return true;
+        }
+        
+        
+        @Override
+        public boolean recycleGameApp(Handle<GameAppContext> thisContext)
+        {
+            Recycled.incrementAndGet();
+            return true;
+        }
+    }
+    
+    
+    /**
+     * A pool that counts what it prepared and destroyed.
+     */
+    private static final class TestPool extends GameAppPool
+    {
+        public final AtomicInteger Prepared = new AtomicInteger();
+        public final AtomicInteger Destroyed = new AtomicInteger();
+        
+        public TestPool(int minIdle, int maxIdle)
+        {
+            super("dungeon", minIdle, maxIdle);
+        }
+        
+        
+        @Override
+        protected Handle<GameAppContext> prepare()
+        {
+            Prepared.incrementAndGet();
+            return handle();
+        }
+        
+        
+        @Override
+        protected void destroy(Handle<GameAppContext> gameApp)
+        {
+            Destroyed.incrementAndGet();
+        }
+        
+        
+        // wait for the background thread to prepare one
+        public Handle<GameAppContext> take() throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            Handle<GameAppContext> result;
+            
+            while ((result = poll()) == null)
+            {
+                if (System.nanoTime() > deadline) { fail("The pool was not refilled."); }
+                
+                Thread.sleep(10);
+            }
+            
+            return result;
+        }
+    }
+    
+    
+    private ScheduledExecutorService globalExecutor;
+    private Dungeons dungeons;
+    private ContainerFacade container;
+    
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        globalExecutor = Executors.newScheduledThreadPool(1);
+        GlobalExecutor.init(globalExecutor);
+        
+        dungeons = new Dungeons();
+        container = new ContainerFacade(Arrays.<GameAppFactory>asList(dungeons));
+    }
+    
+    
+    @After
+    public void tearDown()
+    {
+        container.shutdown();
+        globalExecutor.shutdownNow();
+    }
+    
+    
+    @Test
+    public void poolsKeepTheMinimumPrepared() throws Exception
+    {
+        TestPool pool = new TestPool(2, 3);
+        pool.refill();
+        
+        Handle<GameAppContext> first = pool.take();
+        Handle<GameAppContext> second = pool.take();
+        
+        assertNotSame(first, second);
+        
+        // every poll refills the pool again
+        Handle<GameAppContext> third = pool.take();
+        
+        assertNotSame(second, third);
+        assertTrue(pool.Prepared.get() >= 3);
+        
+        pool.shutdown();
+    }
+    
+    
+    @Test
+    public void poolsTakeRecycledGameAppsUpToTheMaximum() throws Exception
+    {
+        TestPool pool = new TestPool(0, 1);
+        Handle<GameAppContext> recycled = handle();
+        
+        assertTrue(pool.offer(recycled));
+        assertFalse(pool.offer(handle()));
+        
+        assertSame(recycled, pool.poll());
+        assertNull(pool.poll());
+        assertEquals(0, pool.Prepared.get());
+        
+        // idle game apps are unloaded when the pool is shut down
+        assertTrue(pool.offer(recycled));
+        pool.shutdown();
+        
+        assertEquals(1, pool.Destroyed.get());
+        assertFalse(pool.offer(recycled));
+    }
+    
+    
+    @Test
+    public void idleGameAppsAreHidden() throws Exception
+    {
+        Handle<GameAppContext> idle = dungeons.Prepared.poll(5, TimeUnit.SECONDS);
+        
+        assertNotNull("The pool was not filled.", idle);
+        
+        // nobody sees it before it is activated
+        assertNull(container.tryGetGameApp(idle.getUid()));
+        assertTrue(container.getGameApps().isEmpty());
+        
+        Handle<GameAppContext> dungeon = container.createGameApp("dungeon", null, null);
+        
+        assertEquals(1, dungeons.Activated.get());
+        assertSame(dungeon, container.tryGetGameApp(dungeon.getUid()));
+        assertEquals(Arrays.asList(dungeon), container.getGameApps());
+    }
+    
+    
+    @Test
+    public void removedGameAppsAreRecycled() throws Exception
+    {
+        Handle<GameAppContext> dungeon = container.createGameApp("dungeon", null, null);
+        GameAppContext context = dungeon.get();
+        
+        container.removeGameApp(dungeon);
+        
+        assertEquals(1, dungeons.Recycled.get());
+        assertTrue(container.getGameApps().isEmpty());
+        
+        // the old handle is gone, the recycled game app waits in the pool
+        assertNull(container.tryGetGameApp(dungeon.getUid()));
+        
+        // (the pool might have prepared another one before it got the recycled one)
+        Handle<GameAppContext> reused = container.createGameApp("dungeon", null, null);
+        
+        if (reused.get() != context)
+        {
+            reused = container.createGameApp("dungeon", null, null);
+        }
+        
+        assertSame(context, reused.get());
+        assertFalse(dungeon.getUid().equals(reused.getUid()));
+        assertSame(reused, container.tryGetGameApp(reused.getUid()));
+    }
+    
+    
+    private static Handle<GameAppContext> handle()
+    {
+        return new HandleRegistry<GameAppContext>().register(new GameAppContext.Default("dungeon", null, null));
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.EventExecutor;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
+import realityshard.container.events.RoutableEvent;
+import realityshard.container.gameapp.GameAppContext;
+import realityshard.container.gameapp.GameAppFactory;
+import realityshard.container.network.GameAppContextKey;
+import realityshard.container.util.Handle;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that a channel that is claimed by a game app with a home event loop
+ * moves to that loop, and keeps reading there, and that routed events only
+ * go to the instance that registered their key.
+ * 
+ * @author _rusty
+ */
+public class MetaGameAppContextTest
+{
+    
+    // Storage class, what the server saw of one read
+    private static final class Read
+    {
+        public final byte Value;
+        public final EventLoop ChannelLoop;
+        public final Thread Thread;
+        
+        
+        public Read(byte value, EventLoop channelLoop, Thread thread)
+        {
+            this.Value = value;
+            this.ChannelLoop = channelLoop;
+            this.Thread = thread;
+        }
+    }
+    
+    
+    // an event that belongs to the instance with that key
+    public static final class Keyed implements RoutableEvent
+    {
+        private final String key;
+        
+        public Keyed(String key)
+        {
+            this.key = key;
+        }
+        
+        @Override
+        public Object getRoutingKey()
+        {
+            return key;
+        }
+    }
+    
+    
+    // records which instance got which key
+    public final class Recorder
+    {
+        private final String name;
+        
+        public Recorder(String name)
+        {
+            this.name = name;
+        }
+        
+        @Event.Handler
+        public void onKeyed(Keyed event)
+        {
+            handled.add(name + ":" + event.getRoutingKey());
+        }
+    }
+    
+    
+    private ScheduledExecutorService globalExecutor;
+    private NioEventLoopGroup boss;
+    private NioEventLoopGroup worker;
+    private final BlockingQueue<Read> reads = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> handled = new LinkedBlockingQueue<>();
+    
+    
+    @Before
+    public void setUp()
+    {
+        globalExecutor = Executors.newScheduledThreadPool(1);
+        GlobalExecutor.init(globalExecutor);
+        
+        boss = new NioEventLoopGroup(1);
+        worker = new NioEventLoopGroup(2);
+    }
+    
+    
+    @After
+    public void tearDown()
+    {
+        boss.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        worker.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        globalExecutor.shutdownNow();
+    }
+    
+    
+    @Test
+    public void claimedChannelReadsOnTheHomeLoop() throws Exception
+    {
+        final MetaGameAppContext meta = new MetaGameAppContext("test", null);
+        
+        Channel server = new ServerBootstrap()
+                .group(boss, worker)
+                .channel(NioServerSocketChannel.class)
+                .childAttr(GameAppContextKey.KEY, (GameAppContext) meta)
+                .childHandler(new ChannelInitializer<SocketChannel>()
+                {
+                    @Override
+                    protected void initChannel(SocketChannel ch)
+                    {
+                        accepted.add(ch);
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter()
+                        {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg)
+                            {
+                                ByteBuf buf = (ByteBuf) msg;
+                                
+                                while (buf.isReadable())
+                                {
+                                    reads.add(new Read(buf.readByte(), ctx.channel().eventLoop(), Thread.currentThread()));
+                                }
+                                
+                                buf.release();
+                            }
+                        });
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        
+        try (Socket client = new Socket("127.0.0.1", ((InetSocketAddress) server.localAddress()).getPort()))
+        {
+            client.setTcpNoDelay(true);
+            OutputStream out = client.getOutputStream();
+            
+            final Channel channel = accepted.poll(5, TimeUnit.SECONDS);
+            assertNotNull("The connection was not accepted.", channel);
+            
+            out.write(1);
+            out.flush();
+            
+            Read first = reads.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            assertSame(channel.eventLoop(), first.ChannelLoop);
+            
+            // the game app lives on the other loop of the group
+            EventLoop home = otherLoopThan(first.ChannelLoop);
+            final GameAppContext.Default app = new GameAppContext.Default("test", null, null, new EventAggregator(home), home);
+            meta.addContext(app);
+            
+            // like a handler of the channel would
+            channel.eventLoop().submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    meta.claimChannel(channel, app);
+                }
+            }).sync();
+            
+            assertSame(app, channel.attr(GameAppContextKey.KEY).get());
+            
+            // the client keeps sending while the channel moves
+            for (byte i = 2; i <= 5; i++)
+            {
+                out.write(i);
+                out.flush();
+            }
+            
+            for (byte i = 2; i <= 5; i++)
+            {
+                Read read = reads.poll(5, TimeUnit.SECONDS);
+                
+                assertNotNull("Reading did not resume after the move.", read);
+                assertEquals(i, read.Value);
+                assertSame(home, read.ChannelLoop);
+                assertTrue(home.inEventLoop(read.Thread));
+            }
+            
+            assertTrue(channel.isActive());
+            assertTrue(channel.isRegistered());
+        }
+        finally
+        {
+            server.close().sync();
+        }
+    }
+    
+    
+    @Test
+    public void routesAddedDuringInitAreKept() throws Exception
+    {
+        final ContainerFacade[] container = new ContainerFacade[1];
+        
+        GameAppFactory factory = new GameAppFactory()
+        {
+            @Override
+            public String getName()
+            {
+                return "zone";
+            }
+            
+            @Override
+            public boolean isStartup()
+            {
+                return false;
+            }
+            
+            @Override
+            public Channel getServerChannel(ServerBootstrap bootstrap) throws Exception
+            {
+                return bootstrap
+                        .childHandler(new ChannelInboundHandlerAdapter())
+                        .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+            }
+            
+            @Override
+            public boolean initGameApp(Handle<GameAppContext> thisContext, Handle<GameAppContext> parentContext, Map<String, String> additionalParams)
+            {
+                String key = additionalParams.get("key");
+                
+                thisContext.get().getEventAggregator().register(new Recorder(key));
+                
+                // the container adds this instance to the meta context later on
+                container[0].getMetaContext("zone").addRoute(key, thisContext.get());
+                return true;
+            }
+        };
+        
+        container[0] = new ContainerFacade(Arrays.<GameAppFactory>asList(factory));
+        
+        try
+        {
+            Handle<GameAppContext> first = container[0].createGameApp("zone", null, Collections.singletonMap("key", "1"));
+            container[0].createGameApp("zone", null, Collections.singletonMap("key", "2"));
+            
+            MetaGameAppContext meta = container[0].getMetaContext("zone");
+            
+            meta.trigger(new Keyed("1"));
+            assertEquals("1:1", handled.poll(5, TimeUnit.SECONDS));
+            assertNull("The routed event was sent to the other instance too.", handled.poll(200, TimeUnit.MILLISECONDS));
+            
+            // unknown keys are sent to all instances
+            meta.trigger(new Keyed("3"));
+            assertEquals(new HashSet<>(Arrays.asList("1:3", "2:3")), new HashSet<>(Arrays.asList(handled.poll(5, TimeUnit.SECONDS), handled.poll(5, TimeUnit.SECONDS))));
+            
+            // the routes of an unloaded instance are gone
+            container[0].removeGameApp(first);
+            
+            meta.trigger(new Keyed("1"));
+            assertEquals("2:1", handled.poll(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            container[0].shutdown();
+        }
+    }
+    
+    
+    @Test
+    public void routesOfRemovedInstancesAreDropped() throws Exception
+    {
+        MetaGameAppContext meta = new MetaGameAppContext("test", null);
+        
+        GameAppContext removed = instance("removed");
+        GameAppContext other = instance("other");
+        
+        meta.addContext(removed);
+        meta.addContext(other);
+        meta.removeContext(removed);
+        
+        // e.g. a handler of the removed instance that was still running
+        meta.addRoute("key", removed);
+        
+        meta.trigger(new Keyed("key"));
+        assertEquals("other:key", handled.poll(5, TimeUnit.SECONDS));
+        
+        // taken out of a pool again
+        meta.addContext(removed);
+        meta.addRoute("key", removed);
+        
+        meta.trigger(new Keyed("key"));
+        assertEquals("removed:key", handled.poll(5, TimeUnit.SECONDS));
+        assertNull(handled.poll(200, TimeUnit.MILLISECONDS));
+    }
+    
+    
+    private GameAppContext instance(String name)
+    {
+        EventLoop loop = worker.next();
+        GameAppContext result = new GameAppContext.Default(name, null, null, new EventAggregator(loop), loop);
+        
+        result.getEventAggregator().register(new Recorder(name));
+        return result;
+    }
+    
+    
+    private EventLoop otherLoopThan(EventLoop current)
+    {
+        for (EventExecutor loop : worker)
+        {
+            if (loop != current) { return (EventLoop) loop; }
+        }
+        
+        throw new AssertionError("The worker group has only one loop.");
+    }
+}
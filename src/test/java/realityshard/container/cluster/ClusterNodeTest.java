@@ -0,0 +1,364 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.cluster;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import realityshard.container.ContainerFacade;
+import realityshard.container.GlobalExecutor;
+import realityshard.container.events.Event;
+import realityshard.container.gameapp.GameAppContext;
+import realityshard.container.gameapp.GameAppFactory;
+import realityshard.container.gameapp.InterAppChannel;
+import realityshard.container.util.Handle;
+import static org.junit.Assert.*;
+
+
+/**
+ * Runs two containers as a cluster on localhost: Node a has the world and
+ * can create zones, node b can only create zones.
+ * 
+ * @author _rusty
+ */
+public class ClusterNodeTest
+{
+    
+    public static final class Ping implements Event, Serializable
+    {
+        public final String Text;
+        
+        public Ping(String text)
+        {
+            this.Text = text;
+        }
+    }
+    
+    
+    // asks the world to create a zone
+    public static final class Spawn implements Event, Serializable { }
+    
+    
+    // not on the allow-list of the codec
+    public static final class Secret implements Event, Serializable { }
+    
+    
+    /**
+     * The handlers of every game app of the test.
+     */
+    public final class Handlers
+    {
+        private final String node;
+        private final Handle<GameAppContext> context;
+        
+        public Handlers(String node, Handle<GameAppContext> context)
+        {
+            this.node = node;
+            this.context = context;
+        }
+        
+        
+        @Event.Handler
+        public void onPing(Ping event)
+        {
+            received.add(node + ":" + event.Text);
+        }
+        
+        
+        // called by the thread that triggers it, i.e. the cluster loop for forwarded events
+        @Event.Handler(inline = true)
+        public void onSpawn(Spawn event)
+        {
+            Handle<GameAppContext> zone = context.get().createGameApp("zone", context, null);
+            
+            if (zone == null) { spawned.add("none"); }
+            else { spawned.add((zone.get() instanceof RemoteGameAppContext) ? "remote" : "local"); }
+        }
+    }
+    
+    
+    private static abstract class Condition
+    {
+        public abstract boolean holds();
+    }
+    
+    
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> spawned = new LinkedBlockingQueue<>();
+    
+    private ScheduledExecutorService globalExecutor;
+    private ContainerFacade containerA;
+    private ContainerFacade containerB;
+    private ClusterNode nodeA;
+    private ClusterNode nodeB;
+    private Handle<GameAppContext> world;
+    
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        globalExecutor = Executors.newScheduledThreadPool(4);
+        GlobalExecutor.init(globalExecutor);
+        
+        containerA = new ContainerFacade(Arrays.asList(factoryFor("a", "world", true), factoryFor("a", "zone", false)));
+        containerB = new ContainerFacade(Arrays.asList(factoryFor("b", "zone", false)));
+        
+        nodeA = nodeFor(containerA).start();
+        nodeB = nodeFor(containerB).addSeed(nodeA.getLocalAddress()).start();
+        
+        world = containerA.getGameApps().get(0);
+        
+        await("The nodes did not join.", new Condition()
+        {
+            @Override
+            public boolean holds()
+            {
+                return nodeA.getPeers().size() == 1 && nodeB.getPeers().size() == 1 && containerB.tryGetGameApp(world.getUid()) != null;
+            }
+        });
+    }
+    
+    
+    @After
+    public void tearDown()
+    {
+        containerA.shutdown();
+        containerB.shutdown();
+        globalExecutor.shutdownNow();
+    }
+    
+    
+    @Test
+    public void gameAppsArePlacedOnTheLeastLoadedNode() throws Exception
+    {
+        // node a runs the world already
+        Handle<GameAppContext> zone = world.get().createGameApp("zone", world, null);
+        
+        assertTrue(zone.get() instanceof RemoteGameAppContext);
+        assertEquals(nodeB.getNodeUid(), ((RemoteGameAppContext) zone.get()).getNodeUid());
+        assertFalse(containerB.tryGetGameApp(zone.getUid()).get() instanceof RemoteGameAppContext);
+        
+        // both nodes find the game apps of the other one
+        assertSame(zone.get(), containerA.tryGetGameApp(zone.getUid()).get());
+        
+        GameAppContext remoteWorld = containerB.tryGetGameApp(world.getUid()).get();
+        
+        assertTrue(remoteWorld instanceof RemoteGameAppContext);
+        assertEquals("world", remoteWorld.getName());
+    }
+    
+    
+    @Test
+    public void remoteParentsAreTakenFromTheDirectory() throws Exception
+    {
+        Handle<GameAppContext> zone = world.get().createGameApp("zone", world, null);
+        
+        Handle<GameAppContext> parent = containerB.tryGetGameApp(zone.getUid()).get().getParentContext();
+        
+        assertSame(containerB.tryGetGameApp(world.getUid()).get(), parent.get());
+        assertEquals("world", parent.get().getName());
+    }
+    
+    
+    @Test
+    public void eventsAreForwardedToTheNodeOfTheGameApp() throws Exception
+    {
+        Handle<GameAppContext> zone = world.get().createGameApp("zone", world, null);
+        
+        zone.get().trigger(new Ping("down"));
+        assertEquals("b:down", received.poll(5, TimeUnit.SECONDS));
+        
+        containerB.tryGetGameApp(world.getUid()).get().trigger(new Ping("up"));
+        assertEquals("a:up", received.poll(5, TimeUnit.SECONDS));
+    }
+    
+    
+    @Test
+    public void gameAppsAreCreatedLocallyOnTheClusterLoop() throws Exception
+    {
+        // node b would be the better place, but the cluster loop of node a
+        // cannot wait for the reply that it would have to read itself
+        containerB.tryGetGameApp(world.getUid()).get().trigger(new Spawn());
+        
+        assertEquals("local", spawned.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, containerA.getGameApps().size());
+    }
+    
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void interAppChannelsNeedALocalReceiver() throws Exception
+    {
+        Handle<GameAppContext> zone = world.get().createGameApp("zone", world, null);
+        
+        assertTrue(zone.get() instanceof RemoteGameAppContext);
+        
+        new InterAppChannel(zone);
+    }
+    
+    
+    @Test
+    public void disconnectRemovesTheGameAppsOfTheNode() throws Exception
+    {
+        final Handle<GameAppContext> zone = world.get().createGameApp("zone", world, null);
+        
+        assertTrue(zone.get() instanceof RemoteGameAppContext);
+        
+        nodeB.shutdown();
+        
+        await("Node a still knows the game apps of node b.", new Condition()
+        {
+            @Override
+            public boolean holds()
+            {
+                return nodeA.getPeers().isEmpty() && containerA.tryGetGameApp(zone.getUid()) == null;
+            }
+        });
+    }
+    
+    
+    @Test
+    public void untrustedHostsAreRefused() throws Exception
+    {
+        nodeA.addTrustedHost(InetAddress.getByName("10.255.255.1"));
+        
+        try (Socket socket = new Socket(nodeA.getLocalAddress().getAddress(), nodeA.getLocalAddress().getPort()))
+        {
+            socket.setSoTimeout(5000);
+            
+            // a trusted host would get the hello of node a
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+    
+    
+    @Test
+    public void codecOnlyDecodesAllowedClasses() throws Exception
+    {
+        EventCodec codec = codec();
+        
+        ByteBuf allowed = Unpooled.buffer();
+        codec.encode(new Ping("allowed"), allowed);
+        assertEquals("allowed", ((Ping) codec.decode(allowed)).Text);
+        
+        ByteBuf refused = Unpooled.buffer();
+        codec.encode(new Secret(), refused);
+        
+        try
+        {
+            codec.decode(refused);
+            fail("The codec decoded a class that is not allowed.");
+        }
+        catch (InvalidClassException ex)
+        {
+            // expected
+        }
+    }
+    
+    
+    @Test
+    public void nodesNeedAnInterfaceAndACodec() throws Exception
+    {
+        try
+        {
+            new ClusterNode(containerA, new InetSocketAddress(0));
+            fail("The node accepted the wildcard address.");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // expected
+        }
+        
+        try
+        {
+            new ClusterNode(containerA, new InetSocketAddress("127.0.0.1", 0)).start();
+            fail("The node started without an event codec.");
+        }
+        catch (IllegalStateException ex)
+        {
+            // expected
+        }
+    }
+    
+    
+    private ClusterNode nodeFor(ContainerFacade container)
+    {
+        return new ClusterNode(container, new InetSocketAddress("127.0.0.1", 0))
+                .setHeartbeatMillis(100)
+                .setEventCodec(codec());
+    }
+    
+    
+    private static EventCodec codec()
+    {
+        return new EventCodec.Serialization(Ping.class, Spawn.class);
+    }
+    
+    
+    private GameAppFactory factoryFor(final String node, final String name, final boolean startup)
+    {
+        return new GameAppFactory()
+        {
+            @Override
+            public String getName()
+            {
+                return name;
+            }
+            
+            
+            @Override
+            public boolean isStartup()
+            {
+                return startup;
+            }
+            
+            
+            @Override
+            public Channel getServerChannel(ServerBootstrap bootstrap) throws Exception
+            {
+                return bootstrap
+                        .childHandler(new ChannelInboundHandlerAdapter())
+                        .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+            }
+            
+            
+            @Override
+            public boolean initGameApp(Handle<GameAppContext> thisContext, Handle<GameAppContext> parentContext, Map<String, String> additionalParams)
+            {
+                thisContext.get().getEventAggregator().register(new Handlers(node, thisContext));
+                return true;
+            }
+        };
+    }
+    
+    
+    private static void await(String message, Condition condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        
+        while (!condition.holds())
+        {
+            if (System.nanoTime() > deadline) { fail(message); }
+            
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that producers that would wait for themselves are never blocked
+ * by a full queue with the BLOCK policy, and dont grow the queue either.
+ * 
+ * @author _rusty
+ */
+public class DispatchQueueTest
+{
+    
+    /**
+     * Storage class, what a producer saw while it overfilled a queue.
+     */
+    private static final class Overfill
+    {
+        public final CountDownLatch Queued = new CountDownLatch(1);
+        public final CountDownLatch Done = new CountDownLatch(3);
+        public volatile int MaxDepth;
+        public volatile int PausedChannels;
+    }
+    
+    
+    private NioEventLoopGroup group;
+    
+    
+    @Before
+    public void setUp()
+    {
+        group = new NioEventLoopGroup(2);
+    }
+    
+    
+    @After
+    public void tearDown()
+    {
+        // dont wait forever for a loop that is stuck in a full queue
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).awaitUninterruptibly(5, TimeUnit.SECONDS);
+    }
+    
+    
+    @Test
+    public void homeLoopDoesNotBlockOnItsOwnQueue() throws Exception
+    {
+        EventLoop home = group.next();
+        DispatchQueue queue = new DispatchQueue(home, 1, DispatchQueue.OverflowPolicy.BLOCK);
+        
+        Overfill overfill = overfill(home, queue, null);
+        
+        assertTrue(overfill.Queued.await(5, TimeUnit.SECONDS));
+        
+        // the tasks that did not fit are dropped, instead of growing the queue
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(1, overfill.MaxDepth);
+    }
+    
+    
+    @Test
+    public void homeLoopPausesTheChannelInsteadOfBlocking() throws Exception
+    {
+        EventLoop home = group.next();
+        DispatchQueue queue = new DispatchQueue(home, 1, DispatchQueue.OverflowPolicy.BLOCK);
+        EmbeddedChannel origin = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        
+        Overfill overfill = overfill(home, queue, origin);
+        
+        assertTrue(overfill.Queued.await(5, TimeUnit.SECONDS));
+        assertEquals(1, overfill.PausedChannels);
+        
+        // nothing is dropped, and the channel reads again once the queue drained
+        assertTrue(overfill.Done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(0, queue.getPausedChannelCount());
+        assertTrue(origin.config().isAutoRead());
+    }
+    
+    
+    @Test
+    public void otherLoopsOfTheGroupDoNotBlock() throws Exception
+    {
+        EventLoop home = group.next();
+        EventLoop other = group.next();
+        
+        assertNotSame(home, other);
+        
+        // keep the home loop busy, so it cannot drain its queue meanwhile
+        final CountDownLatch release = new CountDownLatch(1);
+        
+        home.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                awaitQuietly(release);
+            }
+        });
+        
+        DispatchQueue queue = new DispatchQueue(home, 1, DispatchQueue.OverflowPolicy.BLOCK);
+        Overfill overfill = overfill(other, queue, null);
+        
+        assertTrue("The other loop waited for the busy home loop.", overfill.Queued.await(5, TimeUnit.SECONDS));
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(1, overfill.MaxDepth);
+        
+        release.countDown();
+        
+        // only the task that fitted into the queue runs
+        assertFalse(overfill.Done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, overfill.Done.getCount());
+    }
+    
+    
+    @Test
+    public void errorsOfTasksDoNotStopTheQueue() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        
+        try
+        {
+            DispatchQueue queue = new DispatchQueue(executor, 16, DispatchQueue.OverflowPolicy.DROP_NEWEST, 1);
+            
+            queue.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    throw new Error("Thrown by a task of the test.");
+                }
+            });
+            
+            final CountDownLatch done = new CountDownLatch(1);
+            
+            queue.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    done.countDown();
+                }
+            });
+            
+            assertTrue("The queue stopped draining after an error.", done.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    
+    /**
+     * Let a loop add three tasks to a queue that only has space for one.
+     */
+    private static Overfill overfill(EventLoop producer, final DispatchQueue queue, final Channel origin)
+    {
+        final Overfill result = new Overfill();
+        
+        producer.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 3; i++)
+                {
+                    queue.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            result.Done.countDown();
+                        }
+                    }, origin);
+                    
+                    result.MaxDepth = Math.max(result.MaxDepth, queue.getDepth());
+                }
+                
+                result.PausedChannels = queue.getPausedChannelCount();
+                result.Queued.countDown();
+            }
+        });
+        
+        return result;
+    }
+    
+    
+    private static void awaitQuietly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import io.netty.util.AbstractReferenceCounted;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that coalescing handlers only get the latest event of a key, and
+ * that the events they never get are released.
+ * 
+ * The aggregator uses an executor that only collects the tasks, so the test
+ * decides when they run.
+ * 
+ * @author _rusty
+ */
+public class EventAggregatorTest
+{
+    
+    // a reference counted event, like a pooled message
+    public static final class Position extends AbstractReferenceCounted implements CoalescableEvent
+    {
+        public final String Key;
+        public final int Value;
+        
+        public Position(String key, int value)
+        {
+            this.Key = key;
+            this.Value = value;
+        }
+        
+        
+        @Override
+        public Object getCoalescingKey()
+        {
+            return Key;
+        }
+        
+        
+        @Override
+        protected void deallocate() { }
+    }
+    
+    
+    public static final class Recorder
+    {
+        public final List<String> Handled = new ArrayList<>();
+        
+        @Event.Handler(coalesce = true)
+        public void onPosition(Position event)
+        {
+            Handled.add(event.Key + ":" + event.Value);
+        }
+    }
+    
+    
+    // collects the tasks
+    private static final class ManualExecutor implements Executor
+    {
+        public final List<Runnable> Tasks = new ArrayList<>();
+        
+        @Override
+        public void execute(Runnable task)
+        {
+            Tasks.add(task);
+        }
+        
+        
+        public void runAll()
+        {
+            List<Runnable> tasks = new ArrayList<>(Tasks);
+            Tasks.clear();
+            
+            for (Runnable task : tasks) { task.run(); }
+        }
+    }
+    
+    
+    private ManualExecutor executor;
+    private Recorder recorder;
+    private EventAggregator aggregator;
+    
+    
+    @Before
+    public void setUp()
+    {
+        executor = new ManualExecutor();
+        recorder = new Recorder();
+        aggregator = new EventAggregator(executor).register(recorder);
+    }
+    
+    
+    @Test
+    public void latestEventOfAKeyWins() throws Exception
+    {
+        aggregator.triggerEvent(new Position("a", 1));
+        aggregator.triggerEvent(new Position("a", 2));
+        aggregator.triggerEvent(new Position("b", 1));
+        aggregator.triggerEvent(new Position("a", 3));
+        
+        // one task per key, the later events only replace the pending one
+        assertEquals(2, executor.Tasks.size());
+        
+        executor.runAll();
+        assertEquals(2, recorder.Handled.size());
+        assertTrue(recorder.Handled.contains("a:3"));
+        assertTrue(recorder.Handled.contains("b:1"));
+        
+        // nothing is pending anymore, so the next event needs a task of its own
+        aggregator.triggerEvent(new Position("a", 4));
+        assertEquals(1, executor.Tasks.size());
+        
+        executor.runAll();
+        assertEquals("a:4", recorder.Handled.get(2));
+    }
+    
+    
+    @Test
+    public void replacedEventsAreReleased() throws Exception
+    {
+        Position first = new Position("a", 1);
+        Position second = new Position("a", 2);
+        
+        aggregator.triggerEvent(first);
+        assertEquals("The pending event is retained.", 2, first.refCnt());
+        
+        aggregator.triggerEvent(second);
+        assertEquals("The replaced event was not released.", 1, first.refCnt());
+        assertEquals(2, second.refCnt());
+        
+        executor.runAll();
+        assertEquals(1, second.refCnt());
+        
+        first.release();
+        second.release();
+    }
+    
+    
+    @Test
+    public void droppedTasksReleaseThePendingEvent() throws Exception
+    {
+        Position event = new Position("a", 1);
+        
+        aggregator.triggerEvent(event);
+        
+        // e.g. a full dispatch queue
+        ((DispatchQueue.DroppableTask) executor.Tasks.remove(0)).dropped();
+        assertEquals(1, event.refCnt());
+        
+        // the key is not stuck: the next event gets a task again
+        aggregator.triggerEvent(new Position("a", 2));
+        assertEquals(1, executor.Tasks.size());
+        
+        executor.runAll();
+        assertEquals("a:2", recorder.Handled.get(0));
+        
+        event.release();
+    }
+}
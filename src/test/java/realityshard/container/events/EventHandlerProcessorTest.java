@@ -0,0 +1,274 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+/**
+ * Compiles a few handler classes with the EventHandlerProcessor and checks
+ * that the generated dispatchers find the same handlers that the
+ * event-aggregator would find with reflection (see collectHandlers).
+ * 
+ * @author _rusty
+ */
+public class EventHandlerProcessorTest
+{
+    
+    private static final String PACKAGE = "realityshard.container.events.generated";
+    
+    private static final String[][] SOURCES =
+    {
+        {
+            "Ping",
+            "public class Ping implements realityshard.container.events.Event { }"
+        },
+        {
+            "Pong",
+            "public class Pong extends Ping { }"
+        },
+        {
+            "Calls",
+            "public class Calls\n"
+            + "{\n"
+            + "    public static final java.util.List<String> LOG = new java.util.concurrent.CopyOnWriteArrayList<>();\n"
+            + "}"
+        },
+        {
+            "BaseHandler",
+            "public class BaseHandler\n"
+            + "{\n"
+            + "    @realityshard.container.events.Event.Handler\n"
+            + "    public void onPing(Ping event) { Calls.LOG.add(\"base.onPing\"); }\n"
+            + "}"
+        },
+        {
+            "Handler",
+            "public class Handler extends BaseHandler\n"
+            + "{\n"
+            + "    @realityshard.container.events.Event.Handler(inline = true)\n"
+            + "    public void onPong(Pong event) { Calls.LOG.add(\"onPong\"); }\n"
+            + "    \n"
+            + "    @realityshard.container.events.Event.Handler(coalesce = true)\n"
+            + "    public static void onStaticPing(Ping event) { Calls.LOG.add(\"onStaticPing\"); }\n"
+            + "    \n"
+            + "    // not public, so neither the processor nor the aggregator see it\n"
+            + "    @realityshard.container.events.Event.Handler\n"
+            + "    void onHiddenPing(Ping event) { Calls.LOG.add(\"onHiddenPing\"); }\n"
+            + "    \n"
+            + "    // not a handler signature\n"
+            + "    @realityshard.container.events.Event.Handler\n"
+            + "    public void onNothing() { }\n"
+            + "}"
+        }
+    };
+    
+    private Path workDir;
+    private URLClassLoader loader;
+    
+    
+    @Before
+    public void compile() throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("The tests need a JDK.", compiler);
+        
+        workDir = Files.createTempDirectory("event-dispatchers");
+        Path sourceDir = workDir.resolve("src");
+        Path classDir = Files.createDirectories(workDir.resolve("classes"));
+        Path packageDir = Files.createDirectories(sourceDir.resolve(PACKAGE.replace('.', File.separatorChar)));
+        
+        File[] sourceFiles = new File[SOURCES.length];
+        
+        for (int i = 0; i < SOURCES.length; i++)
+        {
+            Path file = packageDir.resolve(SOURCES[i][0] + ".java");
+            Files.write(file, ("package " + PACKAGE + ";\n\n" + SOURCES[i][1] + "\n").getBytes(StandardCharsets.UTF_8));
+            sourceFiles[i] = file.toFile();
+        }
+        
+        // the classes of this library, to compile against
+        String classPath = new File(Event.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8))
+        {
+            JavaCompiler.CompilationTask task = compiler.getTask(
+                    null,
+                    files,
+                    diagnostics,
+                    Arrays.asList("-classpath", classPath, "-d", classDir.toString(), "-s", sourceDir.toString()),
+                    null,
+                    files.getJavaFileObjects(sourceFiles));
+            
+            task.setProcessors(Collections.singleton(new EventHandlerProcessor()));
+            
+            assertTrue("The handler classes did not compile: " + diagnostics.getDiagnostics(), task.call());
+        }
+        
+        // the method without an event parameter is reported
+        boolean warned = false;
+        
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+        {
+            warned |= diagnostic.getKind() == Diagnostic.Kind.WARNING && diagnostic.getMessage(null).contains("doesnt follow the signature");
+        }
+        
+        assertTrue(warned);
+        
+        loader = new URLClassLoader(new URL[] { classDir.toUri().toURL() }, getClass().getClassLoader());
+    }
+    
+    
+    @After
+    public void cleanUp() throws IOException
+    {
+        if (loader != null) { loader.close(); }
+        if (workDir == null) { return; }
+        
+        // delete the deepest files first
+        List<Path> paths = new ArrayList<>();
+        collect(workDir, paths);
+        Collections.reverse(paths);
+        
+        for (Path path : paths)
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+    
+    
+    @Test
+    public void dispatcherIsGeneratedForConcreteHandlerClasses() throws Exception
+    {
+        assertNotNull(loader.loadClass(PACKAGE + ".Handler" + EventDispatcher.CLASS_SUFFIX));
+        assertNotNull(loader.loadClass(PACKAGE + ".BaseHandler" + EventDispatcher.CLASS_SUFFIX));
+    }
+    
+    
+    @Test
+    public void dispatcherMatchesReflection() throws Exception
+    {
+        Class<?> handlerClass = loader.loadClass(PACKAGE + ".Handler");
+        Object handler = handlerClass.getDeclaredConstructor().newInstance();
+        
+        EventDispatcher dispatcher = loader.loadClass(PACKAGE + ".Handler" + EventDispatcher.CLASS_SUFFIX)
+                .asSubclass(EventDispatcher.class)
+                .getDeclaredConstructor()
+                .newInstance();
+        
+        final Set<String> generated = new HashSet<>();
+        
+        dispatcher.bind(handler, new EventDispatcher.Registry()
+        {
+            @Override
+            public void add(Class<? extends Event> eventClass, String methodName, boolean inline, boolean coalesce, EventHandlerInvoker invoker)
+            {
+                generated.add(describe(eventClass, methodName, inline, coalesce));
+            }
+        });
+        
+        assertEquals(reflectedHandlersOf(handlerClass), generated);
+        assertEquals(3, generated.size());
+    }
+    
+    
+    @Test
+    public void aggregatorCallsTheGeneratedHandlers() throws Exception
+    {
+        Object handler = loader.loadClass(PACKAGE + ".Handler").getDeclaredConstructor().newInstance();
+        Event pong = (Event) loader.loadClass(PACKAGE + ".Pong").getDeclaredConstructor().newInstance();
+        
+        @SuppressWarnings("unchecked")
+        List<String> calls = (List<String>) loader.loadClass(PACKAGE + ".Calls").getField("LOG").get(null);
+        
+        // run the handlers right away, so we dont have to wait for them
+        EventAggregator aggregator = new EventAggregator(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        });
+        
+        aggregator.register(handler).triggerEvent(pong);
+        
+        assertEquals(new HashSet<>(Arrays.asList("base.onPing", "onPong", "onStaticPing")), new HashSet<>(calls));
+        assertEquals(3, calls.size());
+    }
+    
+    
+    /**
+     * Find the handlers the same way EventAggregator.collectHandlers does without a dispatcher.
+     */
+    private static Set<String> reflectedHandlersOf(Class<?> handlerClass)
+    {
+        Set<String> result = new HashSet<>();
+        
+        for (Method method : handlerClass.getMethods())
+        {
+            Event.Handler annotation = method.getAnnotation(Event.Handler.class);
+            
+            if (annotation == null) { continue; }
+            
+            Class<?>[] params = method.getParameterTypes();
+            
+            if (params.length != 1 || !Event.class.isAssignableFrom(params[0])) { continue; }
+            
+            result.add(describe(params[0].asSubclass(Event.class), method.getName(), annotation.inline(), annotation.coalesce()));
+        }
+        
+        return result;
+    }
+    
+    
+    private static String describe(Class<? extends Event> eventClass, String methodName, boolean inline, boolean coalesce)
+    {
+        return eventClass.getName() + "#" + methodName + "(inline=" + inline + ", coalesce=" + coalesce + ")";
+    }
+    
+    
+    private static void collect(Path dir, List<Path> result) throws IOException
+    {
+        result.add(dir);
+        
+        if (!Files.isDirectory(dir)) { return; }
+        
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir))
+        {
+            for (Path child : children)
+            {
+                collect(child, result);
+            }
+        }
+    }
+}
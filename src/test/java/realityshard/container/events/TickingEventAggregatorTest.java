@@ -0,0 +1,106 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.events;
+
+import io.netty.util.AbstractReferenceCounted;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that failing ticks dont stop the ticking, and that buffered
+ * events are released when the aggregator is shut down.
+ * 
+ * @author _rusty
+ */
+public class TickingEventAggregatorTest
+{
+    
+    // a reference counted event, like a pooled message
+    public static final class Counted extends AbstractReferenceCounted implements Event
+    {
+        @Override
+        protected void deallocate() { }
+    }
+    
+    
+    public static final class Handler
+    {
+        @Event.Handler
+        public void onCounted(Counted event) { }
+    }
+    
+    
+    private ScheduledExecutorService scheduler;
+    
+    
+    @Before
+    public void setUp()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+    
+    
+    @After
+    public void tearDown()
+    {
+        scheduler.shutdownNow();
+    }
+    
+    
+    @Test
+    public void ticksGoOnAfterAnError() throws Exception
+    {
+        TickingEventAggregator aggregator = new TickingEventAggregator(scheduler, 10, TimeUnit.MILLISECONDS);
+        
+        aggregator.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                throw new Error("Thrown by a task of the test.");
+            }
+        });
+        
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        
+        while (aggregator.getTickCount() < 3)
+        {
+            if (System.nanoTime() > deadline) { fail("The aggregator stopped ticking."); }
+            
+            Thread.sleep(10);
+        }
+        
+        aggregator.shutdown();
+    }
+    
+    
+    @Test
+    public void shutdownReleasesBufferedEvents() throws Exception
+    {
+        // the first tick never comes
+        TickingEventAggregator aggregator = new TickingEventAggregator(scheduler, 1, TimeUnit.HOURS);
+        aggregator.register(new Handler());
+        
+        Counted event = new Counted();
+        
+        aggregator.triggerEvent(event);
+        assertEquals("The buffered handler call keeps a reference.", 2, event.refCnt());
+        
+        aggregator.shutdown();
+        assertEquals(1, event.refCnt());
+        
+        // events that are triggered afterwards are released right away
+        aggregator.triggerEvent(event);
+        assertEquals(1, event.refCnt());
+        
+        event.release();
+    }
+}
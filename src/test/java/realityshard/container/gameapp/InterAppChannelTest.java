@@ -0,0 +1,171 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.gameapp;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import realityshard.container.GlobalExecutor;
+import realityshard.container.events.DispatchQueue;
+import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
+import realityshard.container.util.Handle;
+import realityshard.container.util.HandleRegistry;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that the receiver of a channel handles the events in batches, and
+ * that a full channel pushes back on the sender.
+ * 
+ * The receivers use an executor that only collects the tasks, so the test
+ * decides when they run.
+ * 
+ * @author _rusty
+ */
+public class InterAppChannelTest
+{
+    
+    public static final class Ping implements Event { }
+    
+    
+    public static final class Counter
+    {
+        public final AtomicInteger Pings = new AtomicInteger();
+        
+        @Event.Handler
+        public void onPing(Ping event)
+        {
+            Pings.incrementAndGet();
+        }
+    }
+    
+    
+    // collects the tasks, and drops as many as it is told to
+    private static final class ManualExecutor implements Executor
+    {
+        public final BlockingQueue<Runnable> Tasks = new LinkedBlockingQueue<>();
+        public final AtomicInteger Drops = new AtomicInteger();
+        
+        @Override
+        public void execute(Runnable task)
+        {
+            if (Drops.getAndDecrement() > 0)
+            {
+                ((DispatchQueue.DroppableTask) task).dropped();
+                return;
+            }
+            
+            Tasks.add(task);
+        }
+    }
+    
+    
+    private ScheduledExecutorService globalExecutor;
+    private ManualExecutor executor;
+    private Counter counter;
+    private HandleRegistry<GameAppContext> registry;
+    
+    
+    @Before
+    public void setUp()
+    {
+        globalExecutor = Executors.newScheduledThreadPool(1);
+        GlobalExecutor.init(globalExecutor);
+        
+        executor = new ManualExecutor();
+        counter = new Counter();
+        registry = new HandleRegistry<>();
+    }
+    
+    
+    @After
+    public void tearDown()
+    {
+        globalExecutor.shutdownNow();
+    }
+    
+    
+    @Test
+    public void eventsAreHandledInBatches() throws Exception
+    {
+        InterAppChannel channel = new InterAppChannel(receiver(), 128, 64);
+        
+        for (int i = 0; i < 100; i++)
+        {
+            assertTrue(channel.offer(new Ping()));
+        }
+        
+        // one task for all of them
+        assertEquals(1, executor.Tasks.size());
+        assertEquals(100, channel.getDepth());
+        
+        // it handles one batch, and leaves the rest to the next task
+        executor.Tasks.poll().run();
+        assertEquals(64, counter.Pings.get());
+        assertEquals(1, executor.Tasks.size());
+        
+        executor.Tasks.poll().run();
+        assertEquals(100, counter.Pings.get());
+        assertEquals(0, channel.getDepth());
+        assertTrue(executor.Tasks.isEmpty());
+    }
+    
+    
+    @Test
+    public void fullChannelsPushBack() throws Exception
+    {
+        InterAppChannel channel = new InterAppChannel(receiver(), 4, 64);
+        
+        for (int i = 0; i < channel.getCapacity(); i++)
+        {
+            assertTrue(channel.offer(new Ping()));
+        }
+        
+        assertFalse(channel.offer(new Ping()));
+        assertFalse(channel.send(new Ping(), 20, TimeUnit.MILLISECONDS));
+        
+        // there is space again once the receiver caught up
+        executor.Tasks.poll().run();
+        assertEquals(4, counter.Pings.get());
+        assertTrue(channel.offer(new Ping()));
+    }
+    
+    
+    @Test
+    public void droppedBatchesAreScheduledAgain() throws Exception
+    {
+        InterAppChannel channel = new InterAppChannel(receiver(), 16, 64);
+        
+        // e.g. the dispatch queue of the receiver is full right now
+        executor.Drops.set(2);
+        
+        assertTrue(channel.offer(new Ping()));
+        
+        // the sender does not send anything else
+        Runnable task = executor.Tasks.poll(5, TimeUnit.SECONDS);
+        
+        assertNotNull("The dropped batch was not scheduled again.", task);
+        
+        task.run();
+        assertEquals(1, counter.Pings.get());
+    }
+    
+    
+    private Handle<GameAppContext> receiver()
+    {
+        EventAggregator aggregator = new EventAggregator(executor);
+        aggregator.register(counter);
+        
+        return registry.register((GameAppContext) new GameAppContext.Default("receiver", null, null, aggregator));
+    }
+}
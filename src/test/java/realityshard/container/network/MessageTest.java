@@ -0,0 +1,191 @@
+/**
+ * For copyright information see the LICENSE document.
+ */
+
+package realityshard.container.network;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import realityshard.container.events.DispatchQueue;
+import realityshard.container.events.Event;
+import realityshard.container.events.EventAggregator;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that the event-aggregator keeps pooled messages alive as long as
+ * it needs them, and gives them back to their pool when a handler call is
+ * done, dropped or replaced by a newer message.
+ * 
+ * @author _rusty
+ */
+public class MessageTest
+{
+    
+    public static final class Chat extends Message
+    {
+        public int Resets;
+        
+        @Override
+        protected void reset()
+        {
+            Resets++;
+        }
+    }
+    
+    
+    public static final class ChatPool extends Message.Pool<Chat>
+    {
+        @Override
+        protected Chat newMessage()
+        {
+            return new Chat();
+        }
+    }
+    
+    
+    public static final class Handler
+    {
+        @Event.Handler
+        public void onChat(Chat message) { }
+    }
+    
+    
+    public static final class CoalescingHandler
+    {
+        @Event.Handler(coalesce = true)
+        public void onChat(Chat message) { }
+    }
+    
+    
+    // collects the tasks
+    private static final class ManualExecutor implements Executor
+    {
+        public final List<Runnable> Tasks = new ArrayList<>();
+        
+        @Override
+        public void execute(Runnable task)
+        {
+            Tasks.add(task);
+        }
+    }
+    
+    
+    private ChatPool pool;
+    private EmbeddedChannel channel;
+    private ManualExecutor executor;
+    
+    
+    @Before
+    public void setUp()
+    {
+        pool = new ChatPool();
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        executor = new ManualExecutor();
+    }
+    
+    
+    @Test
+    public void pooledMessagesAreRecycledWhenReleased() throws Exception
+    {
+        Chat message = pool.acquire(channel);
+        
+        assertEquals(1, message.refCnt());
+        assertSame(channel, message.getChannel());
+        
+        assertTrue(message.release());
+        assertEquals(1, message.Resets);
+        assertNull(message.getChannel());
+        
+        // this thread gets it back from the pool
+        assertSame(message, pool.acquire(channel));
+        assertEquals(1, message.refCnt());
+        
+        message.release();
+    }
+    
+    
+    @Test
+    public void queuedHandlerCallsRetainTheMessage() throws Exception
+    {
+        EventAggregator aggregator = new EventAggregator(executor).register(new Handler());
+        Chat message = pool.acquire(channel);
+        
+        aggregator.triggerEvent(message);
+        assertEquals(2, message.refCnt());
+        
+        // the pipeline is done with it, but the handler still needs it
+        message.release();
+        assertEquals(0, message.Resets);
+        
+        executor.Tasks.remove(0).run();
+        assertEquals(1, message.Resets);
+    }
+    
+    
+    @Test
+    public void droppedHandlerCallsReleaseTheMessage() throws Exception
+    {
+        DispatchQueue queue = new DispatchQueue(executor, 1, DispatchQueue.OverflowPolicy.DROP_NEWEST);
+        EventAggregator aggregator = new EventAggregator(queue).register(new Handler());
+        
+        Chat queued = pool.acquire(channel);
+        Chat dropped = pool.acquire(channel);
+        
+        aggregator.triggerEvent(queued);
+        aggregator.triggerEvent(dropped);
+        
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(2, queued.refCnt());
+        assertEquals(1, dropped.refCnt());
+        
+        queued.release();
+        dropped.release();
+        assertEquals(1, dropped.Resets);
+    }
+    
+    
+    @Test
+    public void coalescedMessagesAreReleased() throws Exception
+    {
+        EventAggregator aggregator = new EventAggregator(executor).register(new CoalescingHandler());
+        
+        Chat replaced = pool.acquire(channel);
+        Chat latest = pool.acquire(channel);
+        
+        // both come from the same channel, so they have the same key
+        aggregator.triggerEvent(replaced);
+        aggregator.triggerEvent(latest);
+        
+        assertEquals(1, executor.Tasks.size());
+        assertEquals(1, replaced.refCnt());
+        assertEquals(2, latest.refCnt());
+        
+        replaced.release();
+        latest.release();
+        assertEquals(1, replaced.Resets);
+        assertEquals(0, latest.Resets);
+        
+        executor.Tasks.remove(0).run();
+        assertEquals(1, latest.Resets);
+    }
+    
+    
+    @Test
+    public void messagesWithoutAPoolAreNotCounted() throws Exception
+    {
+        Chat message = new Chat();
+        
+        assertEquals(1, message.refCnt());
+        assertSame(message, message.retain());
+        assertFalse(message.release());
+        assertFalse(message.release());
+        assertEquals(1, message.refCnt());
+        assertEquals(0, message.Resets);
+    }
+}